@@ -1,10 +1,17 @@
 package bg.sofia.uni.fmi.mjt.crypto;
 
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+import bg.sofia.uni.fmi.mjt.crypto.command.CommandParser;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.BinaryCommandEncoder;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameEncoder;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.WireFormat;
+
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
 public class Client {
@@ -17,24 +24,36 @@ public class Client {
 
     private static final String COMMAND_EXIT = "exit";
 
+    private static final String OPTION_BINARY = "--binary";
+
     private static final String COMMAND_PROMPT = "> ";
 
     private final String host;
     private final int port;
-    private final ByteBuffer buffer;
+    private final FrameDecoder decoder;
+    private final boolean binary;
 
     public Client() {
         this(DEFAULT_SERVER_HOST, DEFAULT_SERVER_PORT, DEFAULT_BUFFER_CAPACITY);
     }
 
+    public Client(boolean binary) {
+        this(DEFAULT_SERVER_HOST, DEFAULT_SERVER_PORT, DEFAULT_BUFFER_CAPACITY, binary);
+    }
+
     public Client(String host, int port) {
         this(host, port, DEFAULT_BUFFER_CAPACITY);
     }
 
     public Client(String host, int port, int capacity) {
+        this(host, port, capacity, false);
+    }
+
+    public Client(String host, int port, int capacity, boolean binary) {
         this.host = host;
         this.port = port;
-        this.buffer = ByteBuffer.allocateDirect(capacity);
+        this.decoder = new FrameDecoder(capacity, FrameDecoder.MAX_RESPONSE_FRAME_LENGTH);
+        this.binary = binary;
     }
 
     public void start() {
@@ -43,6 +62,11 @@ public class Client {
 
             System.out.println(MESSAGE_CONNECTION_SUCCESSFUL);
 
+            if (binary) {
+                submitFrame(FrameEncoder.encode(Command.PROTOCOL + " " + WireFormat.BINARY.getName()), socketChannel);
+                System.out.println(receiveResponse(socketChannel));
+            }
+
             while (true) {
                 System.out.print(COMMAND_PROMPT);
 
@@ -52,7 +76,12 @@ public class Client {
                     continue;
                 }
 
-                submitRequest(request, socketChannel);
+                try {
+                    submitRequest(request, socketChannel);
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    continue;
+                }
 
                 String response = receiveResponse(socketChannel);
                 System.out.println(response);
@@ -67,22 +96,33 @@ public class Client {
     }
 
     private void submitRequest(String request, SocketChannel socketChannel) throws IOException {
-        buffer.clear();
-        buffer.put(request.getBytes());
-        buffer.flip();
-        socketChannel.write(buffer);
+        if (binary) {
+            submitFrame(BinaryCommandEncoder.encode(CommandParser.parseCommand(request)), socketChannel);
+        } else {
+            submitFrame(FrameEncoder.encode(request), socketChannel);
+        }
+    }
+
+    private void submitFrame(ByteBuffer buffer, SocketChannel socketChannel) throws IOException {
+        while (buffer.hasRemaining()) {
+            socketChannel.write(buffer);
+        }
     }
 
     private String receiveResponse(SocketChannel socketChannel) throws IOException {
-        buffer.clear();
-        socketChannel.read(buffer);
-        buffer.flip();
+        String response;
+
+        while ((response = decoder.nextFrame()) == null) {
+            if (decoder.readFrom(socketChannel) < 0) {
+                throw new EOFException("Connection closed by the server");
+            }
+        }
 
-        return StandardCharsets.UTF_8.decode(buffer).toString();
+        return response;
     }
 
     public static void main(String[] args) {
-        Client client = new Client();
+        Client client = new Client(args.length > 0 && OPTION_BINARY.equals(args[0]));
         client.start();
     }
 }
@@ -1,35 +1,60 @@
 package bg.sofia.uni.fmi.mjt.crypto;
 
-import bg.sofia.uni.fmi.mjt.crypto.command.Command;
 import bg.sofia.uni.fmi.mjt.crypto.command.CommandExecutor;
-import bg.sofia.uni.fmi.mjt.crypto.command.CommandParser;
+import bg.sofia.uni.fmi.mjt.crypto.server.RateLimiter;
+import bg.sofia.uni.fmi.mjt.crypto.server.Reactor;
+import bg.sofia.uni.fmi.mjt.crypto.server.Timeouts;
+import bg.sofia.uni.fmi.mjt.crypto.storage.AssetStorage;
+import bg.sofia.uni.fmi.mjt.crypto.storage.CryptoUserStorage;
 import bg.sofia.uni.fmi.mjt.crypto.storage.DefaultAssetStorage;
-import bg.sofia.uni.fmi.mjt.crypto.storage.DefaultCryptoUserStorage;
+import bg.sofia.uni.fmi.mjt.crypto.storage.MappedCryptoUserStorage;
+import bg.sofia.uni.fmi.mjt.crypto.storage.UserStorageType;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class Server {
     private static final String SERVER_HOST = "localhost";
     private static final int SERVER_PORT = 7777;
     private static final int BUFFER_CAPACITY = 4096;
-
-    private static final String MESSAGE_WELCOME = "Welcome";
+    private static final int REACTOR_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int WORKER_QUEUE_CAPACITY = 1024;
+    private static final long WORKER_SHUTDOWN_MILLIS = 5000;
+    private static final long BACKUP_INTERVAL_MILLIS = 60 * 60 * 1000;
+    private static final String OPTION_STORAGE = "--storage";
+    private static final String OPTION_BACKUP = "--backup";
+    private static final String OPTION_RESIDENT_BYTES = "--resident-bytes";
 
     private final String host;
     private final int port;
-    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int reactorCount;
+    private final CryptoUserStorage userStorage;
+    private final AssetStorage assetStorage;
     private final CommandExecutor executor;
+    private final ExecutorService workers;
 
+    private Timeouts timeouts;
+    private RateLimiter rateLimiter;
+    private String backupPath;
+    private long backupIntervalMillis;
     private Selector selector;
-    private boolean running;
+    private volatile Reactor[] reactors;
+    private int nextReactor;
+    private volatile boolean running;
 
     public Server() {
         this(SERVER_HOST, SERVER_PORT, BUFFER_CAPACITY);
@@ -40,16 +65,77 @@ public class Server {
     }
 
     public Server(String host, int port, int capacity) {
+        this(host, port, capacity, REACTOR_COUNT);
+    }
+
+    public Server(String host, int port, int capacity, int reactorCount) {
+        this(host, port, capacity, reactorCount, UserStorageType.FILE);
+    }
+
+    public Server(String host, int port, int capacity, int reactorCount, UserStorageType storageType) {
+        this(host, port, capacity, reactorCount, storageType.create(), createAssetStorage());
+    }
+
+    public Server(String host, int port, int capacity, int reactorCount, CryptoUserStorage userStorage,
+                  AssetStorage assetStorage) {
+        this(host, port, capacity, reactorCount, userStorage, assetStorage,
+            new CommandExecutor(userStorage, assetStorage), createWorkers(WORKER_COUNT, WORKER_QUEUE_CAPACITY));
+    }
+
+    public Server(String host, int port, int capacity, int reactorCount, CommandExecutor executor) {
+        this(host, port, capacity, reactorCount, executor, createWorkers(WORKER_COUNT, WORKER_QUEUE_CAPACITY));
+    }
+
+    public Server(String host, int port, int capacity, int reactorCount, CommandExecutor executor,
+                  ExecutorService workers) {
+        this(host, port, capacity, reactorCount, null, null, executor, workers);
+    }
+
+    private Server(String host, int port, int capacity, int reactorCount, CryptoUserStorage userStorage,
+                   AssetStorage assetStorage, CommandExecutor executor, ExecutorService workers) {
         this.host = host;
         this.port = port;
-        this.buffer = ByteBuffer.allocateDirect(capacity);
-        this.executor = new CommandExecutor(new DefaultCryptoUserStorage("user-database.csv"),
-            new DefaultAssetStorage());
+        this.capacity = capacity;
+        this.reactorCount = reactorCount > 0 ? reactorCount : REACTOR_COUNT;
+        this.userStorage = userStorage;
+        this.assetStorage = assetStorage;
+        this.executor = executor;
+        this.workers = workers;
+        this.timeouts = Timeouts.defaults();
+        this.rateLimiter = new RateLimiter();
+    }
+
+    public void setTimeouts(Timeouts timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public void setBackup(String backupPath, long backupIntervalMillis) {
+        this.backupPath = backupPath;
+        this.backupIntervalMillis = backupIntervalMillis;
+    }
+
+    private static DefaultAssetStorage createAssetStorage() {
+        DefaultAssetStorage assetStorage = new DefaultAssetStorage();
+        assetStorage.startRefresher();
+
+        return assetStorage;
+    }
+
+    public static ExecutorService createWorkers(int workerCount, int queueCapacity) {
+        return new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity));
     }
 
     public void start() {
+        ScheduledExecutorService backups = startBackups();
+
         try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
             configureServerSocketChannel(serverSocketChannel);
+            startReactors();
 
             running = true;
 
@@ -68,24 +154,73 @@ public class Server {
 
                     if (key.isAcceptable()) {
                         accept(key);
-                    } else if (key.isReadable()) {
-                        read(key);
                     }
                 }
             }
         } catch (IOException e) {
             throw new RuntimeException("There is a problem with the server socket", e);
+        } finally {
+            if (backups != null) {
+                backups.shutdown();
+            }
+
+            stopReactors();
+            stopWorkers();
+            close(selector);
+            close(userStorage);
+            close(assetStorage);
         }
     }
 
     public void stop() {
         running = false;
 
-        if (selector.isOpen()) {
+        if (selector != null && selector.isOpen()) {
             selector.wakeup();
         }
     }
 
+    int[] getConnectionCounts() {
+        Reactor[] current = reactors;
+
+        if (current == null) {
+            return new int[0];
+        }
+
+        int[] counts = new int[current.length];
+
+        for (int i = 0; i < current.length; i++) {
+            counts[i] = current[i].getConnectionCount();
+        }
+
+        return counts;
+    }
+
+    private ScheduledExecutorService startBackups() {
+        if (userStorage == null || backupPath == null || backupIntervalMillis <= 0) {
+            return null;
+        }
+
+        ScheduledExecutorService backups = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        backups.scheduleWithFixedDelay(this::backUpUsers, backupIntervalMillis, backupIntervalMillis,
+            TimeUnit.MILLISECONDS);
+
+        return backups;
+    }
+
+    private void backUpUsers() {
+        try {
+            userStorage.backup(backupPath).join();
+        } catch (RuntimeException e) {
+            //
+        }
+    }
+
     private void configureServerSocketChannel(ServerSocketChannel serverSocketChannel) throws IOException {
         selector = Selector.open();
 
@@ -94,67 +229,102 @@ public class Server {
         serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
     }
 
-    private void configureSocketChannel(SocketChannel socketChannel) throws IOException {
-        socketChannel.configureBlocking(false);
-        socketChannel.register(selector, SelectionKey.OP_READ);
-    }
-
-    private String receiveRequest(SocketChannel socketChannel) throws IOException {
-        buffer.clear();
+    private void startReactors() throws IOException {
+        reactors = new Reactor[reactorCount];
 
-        int bytes = socketChannel.read(buffer);
+        for (int i = 0; i < reactorCount; i++) {
+            reactors[i] = new Reactor(executor, workers, capacity, Reactor.DEFAULT_HIGH_WATER_MARK, timeouts,
+                rateLimiter);
 
-        if (bytes < 0) {
-            socketChannel.close();
-            return null;
+            Thread thread = new Thread(reactors[i], "reactor-" + i);
+            thread.start();
         }
+    }
 
-        buffer.flip();
-
-        byte[] clientInputBytes = new byte[buffer.remaining()];
-        buffer.get(clientInputBytes);
+    private void stopReactors() {
+        if (reactors == null) {
+            return;
+        }
 
-        return new String(clientInputBytes, StandardCharsets.UTF_8);
+        for (Reactor reactor : reactors) {
+            if (reactor != null) {
+                reactor.stop();
+            }
+        }
     }
 
-    private void submitResponse(String response, SocketChannel socketChannel) throws IOException {
-        buffer.clear();
-        buffer.put(response.getBytes());
-        buffer.flip();
+    private void stopWorkers() {
+        workers.shutdown();
 
-        socketChannel.write(buffer);
+        try {
+            workers.awaitTermination(WORKER_SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private void read(SelectionKey key) throws IOException {
-        SocketChannel socketChannel = (SocketChannel) key.channel();
-        String request = receiveRequest(socketChannel);
-
-        if (request == null) {
-            return;
+    private static void close(Object resource) {
+        if (resource instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                //
+            }
         }
+    }
 
-        String username = (String) key.attachment();
-        Command command = CommandParser.parseCommand(request);
-        String response = executor.execute(username, command);
+    private Reactor nextReactor() {
+        Reactor leastLoaded = reactors[nextReactor];
 
-        if (username == null && Command.LOG_IN.equals(command.name()) && !response.contains(" ")) {
-            key.attach(response);
-            response = MESSAGE_WELCOME;
-        } else if (Command.LOG_OUT.equals(command.name())) {
-            key.attach(null);
+        for (int i = 1; i < reactors.length; i++) {
+            Reactor reactor = reactors[(nextReactor + i) % reactors.length];
+
+            if (reactor.getConnectionCount() < leastLoaded.getConnectionCount()) {
+                leastLoaded = reactor;
+            }
         }
 
-        submitResponse(response, socketChannel);
+        nextReactor = (nextReactor + 1) % reactors.length;
+
+        return leastLoaded;
     }
 
     private void accept(SelectionKey key) throws IOException {
         ServerSocketChannel serverSocketChannel = (ServerSocketChannel) key.channel();
         SocketChannel socketChannel = serverSocketChannel.accept();
-        configureSocketChannel(socketChannel);
+
+        if (socketChannel != null) {
+            nextReactor().register(socketChannel);
+        }
     }
 
     public static void main(String[] args) {
-        Server server = new Server();
+        UserStorageType storageType = UserStorageType.FILE;
+        String backupPath = null;
+        long residentBytes = 0;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case OPTION_STORAGE -> storageType = UserStorageType.of(args[i + 1]);
+                case OPTION_BACKUP -> backupPath = args[i + 1];
+                case OPTION_RESIDENT_BYTES -> residentBytes = Long.parseLong(args[i + 1]);
+                default -> {
+                }
+            }
+        }
+
+        if (storageType == null) {
+            System.out.println("Unknown storage type");
+            return;
+        }
+
+        CryptoUserStorage userStorage = storageType == UserStorageType.MAPPED && residentBytes > 0
+            ? new MappedCryptoUserStorage(storageType.getDefaultPath(), residentBytes)
+            : storageType.create();
+
+        Server server = new Server(SERVER_HOST, SERVER_PORT, BUFFER_CAPACITY, REACTOR_COUNT, userStorage,
+            createAssetStorage());
+        server.setBackup(backupPath, BACKUP_INTERVAL_MILLIS);
         server.start();
     }
 }
@@ -1,6 +1,6 @@
 package bg.sofia.uni.fmi.mjt.crypto.command;
 
-public record Command(String name, String[] arguments) {
+public record Command(String name, String[] arguments, double amount) {
     public static final String SIGN_UP = "signup";
     public static final String LOG_IN = "login";
     public static final String LIST = "list";
@@ -11,10 +11,22 @@ public record Command(String name, String[] arguments) {
     public static final String TRENDS = "trends";
     public static final String LOG_OUT = "logout";
     public static final String EXIT = "exit";
+    public static final String PROTOCOL = "protocol";
+
+    public static final double NO_AMOUNT = Double.NaN;
+    public static final String PARSED_AMOUNT = "";
 
     private static final Command EMPTY = new Command("", new String[]{});
 
+    public Command(String name, String[] arguments) {
+        this(name, arguments, NO_AMOUNT);
+    }
+
     public static Command empty() {
         return EMPTY;
     }
+
+    public boolean hasAmount() {
+        return !Double.isNaN(amount);
+    }
 }
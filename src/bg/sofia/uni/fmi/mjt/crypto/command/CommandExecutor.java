@@ -6,6 +6,8 @@ import bg.sofia.uni.fmi.mjt.crypto.exception.AssetStorageException;
 import bg.sofia.uni.fmi.mjt.crypto.exception.InsufficientResourcesException;
 import bg.sofia.uni.fmi.mjt.crypto.exception.NegativeValueException;
 import bg.sofia.uni.fmi.mjt.crypto.exception.UserAlreadyExistsException;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameEncoder;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.WireFormat;
 import bg.sofia.uni.fmi.mjt.crypto.storage.AssetStorage;
 import bg.sofia.uni.fmi.mjt.crypto.storage.CryptoUserStorage;
 import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
@@ -13,34 +15,75 @@ import bg.sofia.uni.fmi.mjt.crypto.user.DefaultCryptoUser;
 import bg.sofia.uni.fmi.mjt.crypto.user.User;
 import org.mindrot.jbcrypt.BCrypt;
 
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class CommandExecutor {
-    private static final String FORMAT_ASSET = "%s: %f";
-
     private static final CommandValidator VALIDATOR = new CommandValidator();
+    private static final int LOCK_STRIPES = 1024;
 
     private final CryptoUserStorage userStorage;
     private final AssetStorage assetStorage;
+    private final ListResponseCache listCache;
+    private final Object[] userLocks;
 
     public CommandExecutor(CryptoUserStorage userStorage, AssetStorage assetStorage) {
         this.userStorage = userStorage;
         this.assetStorage = assetStorage;
+        this.listCache = new ListResponseCache(assetStorage);
+        this.userLocks = new Object[LOCK_STRIPES];
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            userLocks[i] = new Object();
+        }
     }
 
     public String execute(String username, Command command) {
+        return submit(username, command).join();
+    }
+
+    public ByteBuffer executeEncoded(String username, Command command) {
+        return submitEncoded(username, command).join();
+    }
+
+    public CompletableFuture<String> submit(String username, Command command) {
+        if (username == null) {
+            return executeLocked(null, command);
+        }
+
+        synchronized (userLock(username)) {
+            return executeLocked(username, command);
+        }
+    }
+
+    public CompletableFuture<ByteBuffer> submitEncoded(String username, Command command) {
+        if (Command.LIST.equals(command.name()) && command.arguments().length == 0) {
+            try {
+                return CompletableFuture.completedFuture(listCache.getFrame());
+            } catch (AssetStorageException e) {
+                return CompletableFuture.completedFuture(FrameEncoder.encode(e.getMessage()));
+            }
+        }
+
+        return submit(username, command).thenApply(FrameEncoder::encode);
+    }
+
+    private CompletableFuture<String> executeLocked(String username, Command command) {
         CryptoUser user = userStorage.get(username);
         CommandFunction function = getCommandFunction(command);
         Optional<String> error = VALIDATOR.validate(user, command);
 
         try {
-            return error.isEmpty() ? function.apply(user, command.arguments()) : error.get();
+            return error.isEmpty()
+                ? function.apply(user, command).exceptionally(CommandExecutor::getFailureMessage)
+                : reply(error.get());
         } catch (NumberFormatException e) {
-            return "Invalid argument. Only numbers allowed";
+            return reply("Invalid argument. Only numbers allowed");
         } catch (Exception e) {
-            return e.getMessage();
+            return reply(e.getMessage());
         }
     }
 
@@ -56,91 +99,120 @@ public class CommandExecutor {
             case Command.TRENDS -> this::trends;
             case Command.LOG_OUT -> this::logOut;
             case Command.EXIT -> this::exit;
+            case Command.PROTOCOL -> this::protocol;
             default -> this::unknownCommand;
         };
     }
 
-    private String signUp(CryptoUser user, String[] args) throws UserAlreadyExistsException {
-        String username = args[0];
-        String password = BCrypt.hashpw(args[1], BCrypt.gensalt());
+    private CompletableFuture<String> signUp(CryptoUser user, Command command) throws UserAlreadyExistsException {
+        String username = command.arguments()[0];
+        String password = BCrypt.hashpw(command.arguments()[1], BCrypt.gensalt());
         CryptoUser newUser = new DefaultCryptoUser(username, password);
 
-        userStorage.add(newUser);
-
-        return "New user created";
+        return userStorage.addAsync(newUser).thenApply(ignored -> "New user created");
     }
 
-    private String logIn(CryptoUser user, String[] args) {
-        String username = args[0];
-        String password = args[1];
+    private CompletableFuture<String> logIn(CryptoUser user, Command command) {
+        String username = command.arguments()[0];
+        String password = command.arguments()[1];
 
         User storageUser = userStorage.get(username);
 
         if (storageUser == null || !BCrypt.checkpw(password, storageUser.getPassword())) {
-            return "Incorrect username or password";
+            return reply("Incorrect username or password");
         }
 
-        return username;
+        return reply(username);
     }
 
-    private String list(CryptoUser user, String[] args) throws AssetStorageException {
-        return assetStorage.getAssets().stream()
-            .map(asset -> FORMAT_ASSET.formatted(asset.getId(), asset.getPrice()))
-            .collect(Collectors.joining(System.lineSeparator()));
+    private CompletableFuture<String> list(CryptoUser user, Command command) throws AssetStorageException {
+        return reply(listCache.getText());
     }
 
-    private String deposit(CryptoUser user, String[] args) throws NegativeValueException {
-        double cash = Double.parseDouble(args[0]);
+    private CompletableFuture<String> deposit(CryptoUser user, Command command) throws NegativeValueException {
+        double cash = getAmount(command, 0);
 
         user.getWallet().deposit(cash);
-        userStorage.update(user);
 
-        return "Money successfully deposited. Current balance: " + user.getWallet().getBalance();
+        return persist(user, "Money successfully deposited. Current balance: " + user.getWallet().getBalance());
     }
 
-    private String buy(CryptoUser user, String[] args)
+    private CompletableFuture<String> buy(CryptoUser user, Command command)
         throws AssetStorageException, InsufficientResourcesException, NegativeValueException {
-        String assetId = args[0];
-        double moneyToInvest = Double.parseDouble(args[1]);
-        Asset asset = assetStorage.getAsset(assetId);
+        String assetId = command.arguments()[0];
+        double moneyToInvest = getAmount(command, 1);
+        Asset asset = assetStorage.getPriceSnapshot().getAsset(assetId);
 
         user.getWallet().buy(assetId, moneyToInvest, asset.getPrice());
-        userStorage.update(user);
 
-        return asset.getName() + " bought. Balance left: " + user.getWallet().getBalance();
+        return persist(user, asset.getName() + " bought. Balance left: " + user.getWallet().getBalance());
     }
 
-    private String sell(CryptoUser user, String[] args) throws AssetStorageException, AssetNotFoundException {
-        String assetId = args[0];
-        Asset asset = assetStorage.getAsset(assetId);
+    private CompletableFuture<String> sell(CryptoUser user, Command command)
+        throws AssetStorageException, AssetNotFoundException {
+        String assetId = command.arguments()[0];
+        Asset asset = assetStorage.getPriceSnapshot().getAsset(assetId);
 
         user.getWallet().sell(assetId, asset.getPrice());
-        userStorage.update(user);
 
-        return asset.getName() + " sold. Current balance: " + user.getWallet().getBalance();
+        return persist(user, asset.getName() + " sold. Current balance: " + user.getWallet().getBalance());
     }
 
-    private String summary(CryptoUser user, String[] args) throws AssetStorageException {
-        Map<String, Double> prices = assetStorage.getAssetPrices(user.getWallet().getInvestments());
+    private CompletableFuture<String> summary(CryptoUser user, Command command) throws AssetStorageException {
+        Map<String, Double> prices = assetStorage.getPriceSnapshot().getPrices(user.getWallet().getInvestments());
 
-        return user.getWallet().getSummary(prices);
+        return reply(user.getWallet().getSummary(prices));
     }
 
-    private String trends(CryptoUser user, String[] args) throws AssetStorageException {
-        Map<String, Double> prices = assetStorage.getAssetPrices(user.getWallet().getInvestments());
+    private CompletableFuture<String> trends(CryptoUser user, Command command) throws AssetStorageException {
+        Map<String, Double> prices = assetStorage.getPriceSnapshot().getPrices(user.getWallet().getInvestments());
 
-        return user.getWallet().getTrends(prices);
+        return reply(user.getWallet().getTrends(prices));
     }
 
-    private String logOut(CryptoUser user, String[] args) {
-        return "Logged out successfully";
+    private CompletableFuture<String> logOut(CryptoUser user, Command command) {
+        return reply("Logged out successfully");
+    }
+
+    private CompletableFuture<String> exit(CryptoUser user, Command command) {
+        return reply("Goodbye");
+    }
+
+    private CompletableFuture<String> protocol(CryptoUser user, Command command) {
+        WireFormat format = WireFormat.of(command.arguments()[0]);
+
+        if (format == null) {
+            return reply("Unknown protocol");
+        }
+
+        return reply("Switched to " + format.getName() + " protocol");
+    }
+
+    private CompletableFuture<String> unknownCommand(CryptoUser user, Command command) {
+        return reply("Unknown command");
+    }
+
+    private CompletableFuture<String> persist(CryptoUser user, String message) {
+        return userStorage.updateAsync(user).thenApply(ignored -> message);
+    }
+
+    private static CompletableFuture<String> reply(String message) {
+        return CompletableFuture.completedFuture(message);
+    }
+
+    private static String getFailureMessage(Throwable exception) {
+        Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+            ? exception.getCause()
+            : exception;
+
+        return cause.getMessage();
     }
 
-    private String exit(CryptoUser user, String[] args) {
-        return "Goodbye";
+    private Object userLock(String username) {
+        return userLocks[Math.floorMod(username.hashCode(), LOCK_STRIPES)];
     }
 
-    private String unknownCommand(CryptoUser user, String[] args) {
-        return "Unknown command";
+    private static double getAmount(Command command, int index) {
+        return command.hasAmount() ? command.amount() : Double.parseDouble(command.arguments()[index]);
     }
 }
@@ -2,7 +2,9 @@ package bg.sofia.uni.fmi.mjt.crypto.command;
 
 import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
 
+import java.util.concurrent.CompletableFuture;
+
 @FunctionalInterface
 interface CommandFunction {
-    String apply(CryptoUser user, String[] args) throws Exception;
+    CompletableFuture<String> apply(CryptoUser user, Command command) throws Exception;
 }
@@ -1,10 +1,45 @@
 package bg.sofia.uni.fmi.mjt.crypto.command;
 
+import bg.sofia.uni.fmi.mjt.crypto.protocol.AssetIdTable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 public class CommandParser {
     private static final String COMMAND_OPTION_SEPARATOR = "\\s+";
 
+    private static final String[] COMMAND_NAMES = {
+        Command.SIGN_UP, Command.LOG_IN, Command.LIST, Command.DEPOSIT, Command.BUY, Command.SELL,
+        Command.SUMMARY, Command.TRENDS, Command.LOG_OUT, Command.EXIT, Command.PROTOCOL
+    };
+    private static final byte[][] COMMAND_NAME_BYTES = Arrays.stream(COMMAND_NAMES)
+        .map(name -> name.getBytes(StandardCharsets.US_ASCII))
+        .toArray(byte[][]::new);
+    private static final Command[] COMMANDS_WITHOUT_ARGUMENTS = Arrays.stream(COMMAND_NAMES)
+        .map(name -> new Command(name, new String[]{}))
+        .toArray(Command[]::new);
+
+    private static final String[] AMOUNT_ARGUMENTS = {Command.PARSED_AMOUNT};
+
+    private static final int DEFAULT_TOKEN_CAPACITY = 8;
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private final AssetIdTable assetIds;
+
+    private int[] tokenStarts;
+    private int[] tokenEnds;
+    private int tokenCount;
+
+    public CommandParser() {
+        this.assetIds = new AssetIdTable();
+        this.tokenStarts = new int[DEFAULT_TOKEN_CAPACITY];
+        this.tokenEnds = new int[DEFAULT_TOKEN_CAPACITY];
+    }
+
     public static Command parseCommand(String input) {
         if (input.isBlank()) {
             return Command.empty();
@@ -16,7 +51,175 @@ public class CommandParser {
         return new Command(tokens[0], arguments);
     }
 
+    public Command parse(ByteBuffer input) {
+        tokenize(input);
+
+        if (tokenCount == 0) {
+            return Command.empty();
+        }
+
+        int index = findCommandName(input);
+
+        if (index < 0) {
+            return new Command(decodeToken(input, 0), decodeArguments(input));
+        }
+
+        String name = COMMAND_NAMES[index];
+        int argumentCount = tokenCount - 1;
+
+        Command command = switch (name) {
+            case Command.LIST, Command.SUMMARY, Command.TRENDS, Command.LOG_OUT, Command.EXIT ->
+                argumentCount == 0 ? COMMANDS_WITHOUT_ARGUMENTS[index] : null;
+            case Command.DEPOSIT -> argumentCount == 1 ? parseDeposit(input) : null;
+            case Command.BUY -> argumentCount == 2 ? parseBuy(input) : null;
+            case Command.SELL -> argumentCount == 1 ? new Command(name, new String[]{internToken(input, 1)}) : null;
+            default -> null;
+        };
+
+        return command != null ? command : new Command(name, decodeArguments(input));
+    }
+
     private static String[] getTokens(String input) {
         return input.split(COMMAND_OPTION_SEPARATOR);
     }
+
+    private Command parseDeposit(ByteBuffer input) {
+        double amount = parseAmount(input, 1);
+
+        return Double.isNaN(amount) ? null : new Command(Command.DEPOSIT, AMOUNT_ARGUMENTS, amount);
+    }
+
+    private Command parseBuy(ByteBuffer input) {
+        double amount = parseAmount(input, 2);
+
+        if (Double.isNaN(amount)) {
+            return null;
+        }
+
+        return new Command(Command.BUY, new String[]{internToken(input, 1), Command.PARSED_AMOUNT}, amount);
+    }
+
+    private void tokenize(ByteBuffer input) {
+        tokenCount = 0;
+
+        int position = input.position();
+        int limit = input.limit();
+
+        while (position < limit) {
+            while (position < limit && isSeparator(input.get(position))) {
+                position++;
+            }
+
+            if (position == limit) {
+                break;
+            }
+
+            int start = position;
+
+            while (position < limit && !isSeparator(input.get(position))) {
+                position++;
+            }
+
+            addToken(start, position);
+        }
+    }
+
+    private void addToken(int start, int end) {
+        if (tokenCount == tokenStarts.length) {
+            tokenStarts = Arrays.copyOf(tokenStarts, tokenCount * 2);
+            tokenEnds = Arrays.copyOf(tokenEnds, tokenCount * 2);
+        }
+
+        tokenStarts[tokenCount] = start;
+        tokenEnds[tokenCount] = end;
+        tokenCount++;
+    }
+
+    private int findCommandName(ByteBuffer input) {
+        for (int i = 0; i < COMMAND_NAME_BYTES.length; i++) {
+            if (tokenEquals(input, 0, COMMAND_NAME_BYTES[i])) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean tokenEquals(ByteBuffer input, int token, byte[] expected) {
+        int start = tokenStarts[token];
+
+        if (tokenEnds[token] - start != expected.length) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            if (input.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private double parseAmount(ByteBuffer input, int token) {
+        int position = tokenStarts[token];
+        int end = tokenEnds[token];
+        boolean negative = input.get(position) == '-';
+
+        if (negative || input.get(position) == '+') {
+            position++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+
+        for (; position < end; position++) {
+            byte b = input.get(position);
+
+            if (b == '.' && !fraction) {
+                fraction = true;
+            } else if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                fractionDigits += fraction ? 1 : 0;
+            } else {
+                return Command.NO_AMOUNT;
+            }
+        }
+
+        if (digits == 0 || digits > MAX_EXACT_DIGITS) {
+            return Command.NO_AMOUNT;
+        }
+
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+
+        return negative ? -value : value;
+    }
+
+    private String internToken(ByteBuffer input, int token) {
+        return assetIds.intern(input, tokenStarts[token], tokenEnds[token] - tokenStarts[token]);
+    }
+
+    private String decodeToken(ByteBuffer input, int token) {
+        byte[] bytes = new byte[tokenEnds[token] - tokenStarts[token]];
+        input.get(tokenStarts[token], bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String[] decodeArguments(ByteBuffer input) {
+        String[] arguments = new String[tokenCount - 1];
+
+        for (int i = 1; i < tokenCount; i++) {
+            arguments[i - 1] = decodeToken(input, i);
+        }
+
+        return arguments;
+    }
+
+    public static boolean isSeparator(byte b) {
+        return b >= 0 && b <= ' ';
+    }
 }
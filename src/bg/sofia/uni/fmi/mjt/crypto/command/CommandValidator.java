@@ -23,6 +23,7 @@ public class CommandValidator {
             case Command.TRENDS -> this::validateTrends;
             case Command.LOG_OUT -> this::validateLogOut;
             case Command.EXIT -> this::validateExit;
+            case Command.PROTOCOL -> this::validateProtocol;
             default -> this::validateUnknownCommand;
         };
 
@@ -101,6 +102,10 @@ public class CommandValidator {
         return checkArgumentCount(0, arguments.length);
     }
 
+    private Optional<String> validateProtocol(User user, String[] arguments) {
+        return checkArgumentCount(1, arguments.length);
+    }
+
     private Optional<String> validateUnknownCommand(User user, String[] arguments) {
         return Optional.empty();
     }
@@ -0,0 +1,52 @@
+package bg.sofia.uni.fmi.mjt.crypto.command;
+
+import bg.sofia.uni.fmi.mjt.crypto.exception.AssetStorageException;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameEncoder;
+import bg.sofia.uni.fmi.mjt.crypto.storage.AssetStorage;
+import bg.sofia.uni.fmi.mjt.crypto.storage.PriceSnapshot;
+
+import java.nio.ByteBuffer;
+import java.util.stream.Collectors;
+
+class ListResponseCache {
+    private static final String FORMAT_ASSET = "%s: %f";
+
+    private final AssetStorage assetStorage;
+
+    private volatile Entry entry;
+
+    ListResponseCache(AssetStorage assetStorage) {
+        this.assetStorage = assetStorage;
+    }
+
+    String getText() throws AssetStorageException {
+        return getEntry().text();
+    }
+
+    ByteBuffer getFrame() throws AssetStorageException {
+        return getEntry().frame().duplicate();
+    }
+
+    private Entry getEntry() throws AssetStorageException {
+        PriceSnapshot snapshot = assetStorage.getPriceSnapshot();
+        Entry current = entry;
+
+        if (current == null || current.epoch() != snapshot.getEpoch()) {
+            current = render(snapshot);
+            entry = current;
+        }
+
+        return current;
+    }
+
+    private Entry render(PriceSnapshot snapshot) {
+        String text = snapshot.getAssets().stream()
+            .map(asset -> FORMAT_ASSET.formatted(asset.getId(), asset.getPrice()))
+            .collect(Collectors.joining(System.lineSeparator()));
+
+        return new Entry(snapshot.getEpoch(), text, FrameEncoder.encode(text).asReadOnlyBuffer());
+    }
+
+    private record Entry(long epoch, String text, ByteBuffer frame) {
+    }
+}
@@ -0,0 +1,13 @@
+package bg.sofia.uni.fmi.mjt.crypto.exception;
+
+import java.io.IOException;
+import java.io.Serial;
+
+public class FrameException extends IOException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public FrameException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,77 @@
+package bg.sofia.uni.fmi.mjt.crypto.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class AssetIdTable {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int ASCII_LIMIT = 0x80;
+
+    private final String[] entries;
+
+    private int size;
+
+    public AssetIdTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public AssetIdTable(int capacity) {
+        this.entries = new String[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+    }
+
+    public String intern(ByteBuffer buffer, int offset, int length) {
+        int hash = 0;
+
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(offset + i);
+
+            if ((b & 0xFF) >= ASCII_LIMIT) {
+                return decode(buffer, offset, length);
+            }
+
+            hash = 31 * hash + b;
+        }
+
+        int mask = entries.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            String entry = entries[slot];
+
+            if (entry == null) {
+                String id = decode(buffer, offset, length);
+
+                if (size < entries.length / 2) {
+                    entries[slot] = id;
+                    size++;
+                }
+
+                return id;
+            }
+
+            if (entry.hashCode() == hash && matches(entry, buffer, offset, length)) {
+                return entry;
+            }
+        }
+    }
+
+    private static boolean matches(String entry, ByteBuffer buffer, int offset, int length) {
+        if (entry.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (entry.charAt(i) != buffer.get(offset + i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
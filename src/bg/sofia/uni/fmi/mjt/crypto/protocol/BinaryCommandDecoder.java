@@ -0,0 +1,117 @@
+package bg.sofia.uni.fmi.mjt.crypto.protocol;
+
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+import bg.sofia.uni.fmi.mjt.crypto.command.CommandParser;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class BinaryCommandDecoder {
+    private static final byte DELIMITER_FIELD = ';';
+
+    private static final String[] NO_ARGUMENTS = {};
+    private static final String[] AMOUNT_ARGUMENTS = {Command.PARSED_AMOUNT};
+
+    private static final Map<Opcode, Command> COMMANDS_WITHOUT_ARGUMENTS = new EnumMap<>(Opcode.class);
+
+    static {
+        for (Opcode opcode : new Opcode[]{Opcode.LIST, Opcode.SUMMARY, Opcode.TRENDS, Opcode.LOG_OUT, Opcode.EXIT}) {
+            COMMANDS_WITHOUT_ARGUMENTS.put(opcode, new Command(opcode.getCommandName(), NO_ARGUMENTS));
+        }
+    }
+
+    private final AssetIdTable assetIds;
+
+    public BinaryCommandDecoder() {
+        this.assetIds = new AssetIdTable();
+    }
+
+    public Command decode(ByteBuffer payload) {
+        try {
+            Opcode opcode = Opcode.of(payload.get());
+
+            if (opcode == null) {
+                return Command.empty();
+            }
+
+            String name = opcode.getCommandName();
+
+            return switch (opcode) {
+                case SIGN_UP, LOG_IN -> {
+                    String username = readUsername(payload);
+
+                    yield username == null ? Command.empty() : new Command(name, new String[]{username,
+                        readString(payload)});
+                }
+                case DEPOSIT -> new Command(name, AMOUNT_ARGUMENTS, payload.getDouble());
+                case BUY -> {
+                    String assetId = readAssetId(payload);
+
+                    yield assetId == null
+                        ? Command.empty()
+                        : new Command(name, new String[]{assetId, Command.PARSED_AMOUNT}, payload.getDouble());
+                }
+                case SELL -> {
+                    String assetId = readAssetId(payload);
+
+                    yield assetId == null ? Command.empty() : new Command(name, new String[]{assetId});
+                }
+                default -> COMMANDS_WITHOUT_ARGUMENTS.get(opcode);
+            };
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            return Command.empty();
+        }
+    }
+
+    private String readAssetId(ByteBuffer payload) {
+        int length = Byte.toUnsignedInt(payload.get());
+
+        if (!isValidName(payload, payload.position(), length)) {
+            return null;
+        }
+
+        String assetId = assetIds.intern(payload, payload.position(), length);
+
+        payload.position(payload.position() + length);
+
+        return assetId;
+    }
+
+    private static String readUsername(ByteBuffer payload) {
+        int length = Short.toUnsignedInt(payload.getShort());
+
+        if (!isValidName(payload, payload.position(), length)) {
+            return null;
+        }
+
+        return readString(payload, length);
+    }
+
+    private static String readString(ByteBuffer payload) {
+        return readString(payload, Short.toUnsignedInt(payload.getShort()));
+    }
+
+    private static String readString(ByteBuffer payload, int length) {
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isValidName(ByteBuffer payload, int position, int length) {
+        int end = Math.min(position + length, payload.limit());
+
+        for (int i = position; i < end; i++) {
+            byte b = payload.get(i);
+
+            if (CommandParser.isSeparator(b) || b == DELIMITER_FIELD) {
+                return false;
+            }
+        }
+
+        return length > 0;
+    }
+}
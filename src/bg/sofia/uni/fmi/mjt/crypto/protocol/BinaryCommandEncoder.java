@@ -0,0 +1,101 @@
+package bg.sofia.uni.fmi.mjt.crypto.protocol;
+
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+public class BinaryCommandEncoder {
+    private static final int MAX_STRING_LENGTH = 0xFFFF;
+    private static final int MAX_ASSET_ID_LENGTH = 0xFF;
+
+    public static ByteBuffer encode(Command command) {
+        Opcode opcode = Opcode.of(command.name());
+
+        if (opcode == null) {
+            throw new IllegalArgumentException("Unknown command");
+        }
+
+        String[] arguments = command.arguments();
+
+        ByteBuffer frame = switch (opcode) {
+            case SIGN_UP, LOG_IN -> {
+                requireArguments(2, arguments);
+
+                byte[] username = toBytes(arguments[0], StandardCharsets.UTF_8, MAX_STRING_LENGTH);
+                byte[] password = toBytes(arguments[1], StandardCharsets.UTF_8, MAX_STRING_LENGTH);
+
+                yield allocate(opcode, 2 * Short.BYTES + username.length + password.length)
+                    .putShort((short) username.length).put(username)
+                    .putShort((short) password.length).put(password);
+            }
+            case DEPOSIT -> {
+                requireArguments(1, arguments);
+
+                yield allocate(opcode, Double.BYTES).putDouble(parseAmount(command, 0));
+            }
+            case BUY -> {
+                requireArguments(2, arguments);
+
+                byte[] assetId = toBytes(arguments[0], StandardCharsets.US_ASCII, MAX_ASSET_ID_LENGTH);
+                double amount = parseAmount(command, 1);
+
+                yield allocate(opcode, Byte.BYTES + assetId.length + Double.BYTES)
+                    .put((byte) assetId.length).put(assetId)
+                    .putDouble(amount);
+            }
+            case SELL -> {
+                requireArguments(1, arguments);
+
+                byte[] assetId = toBytes(arguments[0], StandardCharsets.US_ASCII, MAX_ASSET_ID_LENGTH);
+
+                yield allocate(opcode, Byte.BYTES + assetId.length).put((byte) assetId.length).put(assetId);
+            }
+            default -> {
+                requireArguments(0, arguments);
+
+                yield allocate(opcode, 0);
+            }
+        };
+
+        return frame.flip();
+    }
+
+    private static ByteBuffer allocate(Opcode opcode, int argumentsLength) {
+        int payloadLength = Byte.BYTES + argumentsLength;
+
+        return ByteBuffer.allocate(FrameEncoder.HEADER_LENGTH + payloadLength)
+            .putInt(payloadLength)
+            .put(opcode.getCode());
+    }
+
+    private static void requireArguments(int expected, String[] arguments) {
+        if (arguments.length != expected) {
+            throw new IllegalArgumentException(expected == 1 ? "1 argument expected"
+                : "%d arguments expected".formatted(expected));
+        }
+    }
+
+    private static double parseAmount(Command command, int index) {
+        if (command.hasAmount()) {
+            return command.amount();
+        }
+
+        try {
+            return Double.parseDouble(command.arguments()[index]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid argument. Only numbers allowed", e);
+        }
+    }
+
+    private static byte[] toBytes(String value, Charset charset, int maxLength) {
+        byte[] bytes = value.getBytes(charset);
+
+        if (bytes.length > maxLength) {
+            throw new IllegalArgumentException("Argument is too long");
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,107 @@
+package bg.sofia.uni.fmi.mjt.crypto.protocol;
+
+import bg.sofia.uni.fmi.mjt.crypto.exception.FrameException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public class FrameDecoder {
+    public static final int MAX_FRAME_LENGTH = 64 * 1024;
+    public static final int MAX_RESPONSE_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private final int maxFrameLength;
+
+    private ByteBuffer buffer;
+    private int readPosition;
+
+    public FrameDecoder(int capacity) {
+        this(capacity, MAX_FRAME_LENGTH);
+    }
+
+    public FrameDecoder(int capacity, int maxFrameLength) {
+        this.buffer = ByteBuffer.allocate(Math.max(capacity, FrameEncoder.HEADER_LENGTH));
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        compact();
+
+        if (!buffer.hasRemaining()) {
+            grow(buffer.capacity() * 2);
+        }
+
+        return channel.read(buffer);
+    }
+
+    public String nextFrame() throws FrameException {
+        ByteBuffer payload = nextPayload();
+
+        return payload != null ? StandardCharsets.UTF_8.decode(payload).toString() : null;
+    }
+
+    public ByteBuffer nextPayload() throws FrameException {
+        int available = buffer.position() - readPosition;
+
+        if (available < FrameEncoder.HEADER_LENGTH) {
+            return null;
+        }
+
+        int length = buffer.getInt(readPosition);
+
+        if (length < 0 || length > maxFrameLength) {
+            throw new FrameException("Invalid frame length: " + length);
+        }
+
+        int frameLength = FrameEncoder.HEADER_LENGTH + length;
+
+        if (available < frameLength) {
+            ensureCapacity(frameLength);
+            return null;
+        }
+
+        ByteBuffer payload = buffer.slice(readPosition + FrameEncoder.HEADER_LENGTH, length);
+        readPosition += frameLength;
+
+        return payload;
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    private void ensureCapacity(int frameLength) {
+        if (buffer.capacity() - readPosition >= frameLength) {
+            return;
+        }
+
+        compact();
+
+        if (buffer.capacity() < frameLength) {
+            grow(Math.max(frameLength, buffer.capacity() * 2));
+        }
+    }
+
+    private void compact() {
+        if (readPosition == 0) {
+            return;
+        }
+
+        buffer.flip();
+        buffer.position(readPosition);
+        buffer.compact();
+        readPosition = 0;
+    }
+
+    private void grow(int capacity) {
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+
+        buffer.flip();
+        buffer.position(readPosition);
+        grown.put(buffer);
+
+        buffer = grown;
+        readPosition = 0;
+    }
+}
@@ -0,0 +1,23 @@
+package bg.sofia.uni.fmi.mjt.crypto.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class FrameEncoder {
+    public static final int HEADER_LENGTH = Integer.BYTES;
+
+    public static ByteBuffer encode(String message) {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + payload.length);
+
+        encode(payload, buffer);
+        buffer.flip();
+
+        return buffer;
+    }
+
+    public static void encode(byte[] payload, ByteBuffer buffer) {
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+    }
+}
@@ -0,0 +1,54 @@
+package bg.sofia.uni.fmi.mjt.crypto.protocol;
+
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+
+public enum Opcode {
+    SIGN_UP(0x01, Command.SIGN_UP),
+    LOG_IN(0x02, Command.LOG_IN),
+    LIST(0x03, Command.LIST),
+    DEPOSIT(0x04, Command.DEPOSIT),
+    BUY(0x05, Command.BUY),
+    SELL(0x06, Command.SELL),
+    SUMMARY(0x07, Command.SUMMARY),
+    TRENDS(0x08, Command.TRENDS),
+    LOG_OUT(0x09, Command.LOG_OUT),
+    EXIT(0x0A, Command.EXIT);
+
+    private static final Opcode[] BY_CODE = new Opcode[Byte.MAX_VALUE + 1];
+
+    static {
+        for (Opcode opcode : values()) {
+            BY_CODE[opcode.code] = opcode;
+        }
+    }
+
+    private final byte code;
+    private final String commandName;
+
+    Opcode(int code, String commandName) {
+        this.code = (byte) code;
+        this.commandName = commandName;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public String getCommandName() {
+        return commandName;
+    }
+
+    public static Opcode of(byte code) {
+        return code >= 0 ? BY_CODE[code] : null;
+    }
+
+    public static Opcode of(String commandName) {
+        for (Opcode opcode : values()) {
+            if (opcode.commandName.equals(commandName)) {
+                return opcode;
+            }
+        }
+
+        return null;
+    }
+}
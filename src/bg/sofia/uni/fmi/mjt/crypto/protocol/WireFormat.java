@@ -0,0 +1,26 @@
+package bg.sofia.uni.fmi.mjt.crypto.protocol;
+
+public enum WireFormat {
+    TEXT("text"),
+    BINARY("binary");
+
+    private final String name;
+
+    WireFormat(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static WireFormat of(String name) {
+        for (WireFormat format : values()) {
+            if (format.name.equals(name)) {
+                return format;
+            }
+        }
+
+        return null;
+    }
+}
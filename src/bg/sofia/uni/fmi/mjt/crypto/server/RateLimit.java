@@ -0,0 +1,13 @@
+package bg.sofia.uni.fmi.mjt.crypto.server;
+
+public record RateLimit(double permitsPerSecond, int burst) {
+    private static final RateLimit UNLIMITED = new RateLimit(0, 0);
+
+    public static RateLimit unlimited() {
+        return UNLIMITED;
+    }
+
+    public boolean isLimited() {
+        return permitsPerSecond > 0 && burst > 0;
+    }
+}
@@ -0,0 +1,104 @@
+package bg.sofia.uni.fmi.mjt.crypto.server;
+
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RateLimiter {
+    private static final RateLimit DEFAULT_ADDRESS_LIMIT = new RateLimit(50, 100);
+    private static final RateLimit DEFAULT_USER_LIMIT = new RateLimit(20, 60);
+
+    private static final int DEFAULT_COST = 1;
+    private static final Map<String, Integer> DEFAULT_COSTS = Map.of(
+        Command.SIGN_UP, 20,
+        Command.LOG_IN, 20,
+        Command.LIST, 2,
+        Command.TRENDS, 2
+    );
+
+    private static final RateLimiter UNLIMITED = new RateLimiter(RateLimit.unlimited(), RateLimit.unlimited());
+
+    private final RateLimit addressLimit;
+    private final RateLimit userLimit;
+    private final Map<String, Integer> costs;
+    private final Map<InetAddress, TokenBucket> addressBuckets;
+    private final Map<String, TokenBucket> userBuckets;
+
+    public RateLimiter() {
+        this(DEFAULT_ADDRESS_LIMIT, DEFAULT_USER_LIMIT);
+    }
+
+    public RateLimiter(RateLimit addressLimit, RateLimit userLimit) {
+        this(addressLimit, userLimit, DEFAULT_COSTS);
+    }
+
+    public RateLimiter(RateLimit addressLimit, RateLimit userLimit, Map<String, Integer> costs) {
+        this.addressLimit = addressLimit;
+        this.userLimit = userLimit;
+        this.costs = Map.copyOf(costs);
+        this.addressBuckets = new ConcurrentHashMap<>();
+        this.userBuckets = new ConcurrentHashMap<>();
+    }
+
+    public static RateLimiter unlimited() {
+        return UNLIMITED;
+    }
+
+    public boolean tryAcquire(InetAddress address, String username, Command command) {
+        return tryAcquire(address, username, command, System.nanoTime());
+    }
+
+    boolean tryAcquire(InetAddress address, String username, Command command, long nowNanos) {
+        int cost = costs.getOrDefault(command.name(), DEFAULT_COST);
+        TokenBucket addressBucket = address != null && addressLimit.isLimited()
+            ? bucket(addressBuckets, address, addressLimit, nowNanos)
+            : null;
+
+        if (addressBucket != null && !addressBucket.tryAcquire(cost, nowNanos)) {
+            return false;
+        }
+
+        if (username != null && userLimit.isLimited()
+            && !bucket(userBuckets, username, userLimit, nowNanos).tryAcquire(cost, nowNanos)) {
+            if (addressBucket != null) {
+                addressBucket.refund(cost);
+            }
+
+            return false;
+        }
+
+        return true;
+    }
+
+    public int evictFullBuckets() {
+        return evictFullBuckets(System.nanoTime());
+    }
+
+    int evictFullBuckets(long nowNanos) {
+        return evictFullBuckets(addressBuckets, nowNanos) + evictFullBuckets(userBuckets, nowNanos);
+    }
+
+    public int size() {
+        return addressBuckets.size() + userBuckets.size();
+    }
+
+    private static <K> TokenBucket bucket(Map<K, TokenBucket> buckets, K key, RateLimit limit, long nowNanos) {
+        TokenBucket bucket = buckets.get(key);
+
+        return bucket != null ? bucket : buckets.computeIfAbsent(key, k -> new TokenBucket(limit, nowNanos));
+    }
+
+    private static <K> int evictFullBuckets(Map<K, TokenBucket> buckets, long nowNanos) {
+        int evicted = 0;
+
+        for (Map.Entry<K, TokenBucket> entry : buckets.entrySet()) {
+            if (entry.getValue().isFull(nowNanos) && buckets.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+
+        return evicted;
+    }
+}
@@ -0,0 +1,564 @@
+package bg.sofia.uni.fmi.mjt.crypto.server;
+
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+import bg.sofia.uni.fmi.mjt.crypto.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.crypto.command.CommandParser;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.BinaryCommandDecoder;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameEncoder;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.WireFormat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Reactor implements Runnable {
+    public static final long DEFAULT_HIGH_WATER_MARK = 1024 * 1024;
+
+    private static final String MESSAGE_WELCOME = "Welcome";
+    private static final String MESSAGE_SERVER_BUSY = "Server is busy. Try again later";
+    private static final ByteBuffer FRAME_TOO_MANY_REQUESTS =
+        FrameEncoder.encode("Too many requests. Try again later").asReadOnlyBuffer();
+
+    private static final int MAX_BATCH_SIZE = 128;
+    static final int MAX_QUEUED_COMMANDS = 2 * MAX_BATCH_SIZE;
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 4096;
+    private static final long RATE_LIMIT_EVICTION_MILLIS = 60 * 1000;
+
+    private final Selector selector;
+    private final int capacity;
+    private final long highWaterMark;
+    private final CommandExecutor executor;
+    private final ExecutorService workers;
+    private final CommandParser textParser;
+    private final BinaryCommandDecoder binaryDecoder;
+    private final Queue<SocketChannel> pendingChannels;
+    private final Queue<Completion> completions;
+    private final AtomicInteger connectionCount;
+    private final AtomicLong pendingOutputBytes;
+    private final AtomicInteger queuedCommands;
+    private final TimingWheel wheel;
+    private final Timeouts timeouts;
+    private final RateLimiter rateLimiter;
+
+    private volatile boolean running;
+
+    public Reactor(CommandExecutor executor, ExecutorService workers, int capacity) throws IOException {
+        this(executor, workers, capacity, DEFAULT_HIGH_WATER_MARK);
+    }
+
+    public Reactor(CommandExecutor executor, ExecutorService workers, int capacity, long highWaterMark)
+        throws IOException {
+        this(executor, workers, capacity, highWaterMark, Timeouts.defaults());
+    }
+
+    public Reactor(CommandExecutor executor, ExecutorService workers, int capacity, long highWaterMark,
+                   Timeouts timeouts) throws IOException {
+        this(executor, workers, capacity, highWaterMark, timeouts, RateLimiter.unlimited());
+    }
+
+    public Reactor(CommandExecutor executor, ExecutorService workers, int capacity, long highWaterMark,
+                   Timeouts timeouts, RateLimiter rateLimiter) throws IOException {
+        this.selector = Selector.open();
+        this.capacity = capacity;
+        this.highWaterMark = highWaterMark > 0 ? highWaterMark : DEFAULT_HIGH_WATER_MARK;
+        this.executor = executor;
+        this.workers = workers;
+        this.textParser = new CommandParser();
+        this.binaryDecoder = new BinaryCommandDecoder();
+        this.pendingChannels = new ConcurrentLinkedQueue<>();
+        this.completions = new ConcurrentLinkedQueue<>();
+        this.connectionCount = new AtomicInteger();
+        this.pendingOutputBytes = new AtomicLong();
+        this.queuedCommands = new AtomicInteger();
+        this.wheel = new TimingWheel(TICK_MILLIS, WHEEL_SIZE, nowMillis());
+        this.timeouts = timeouts;
+        this.rateLimiter = rateLimiter;
+    }
+
+    public void register(SocketChannel socketChannel) {
+        connectionCount.incrementAndGet();
+        pendingChannels.add(socketChannel);
+        selector.wakeup();
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public long getPendingOutputBytes() {
+        return pendingOutputBytes.get();
+    }
+
+    public int getQueuedCommands() {
+        return queuedCommands.get();
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        scheduleRateLimitEviction();
+
+        try (selector) {
+            while (running) {
+                selector.select(wheel.getTickMillis());
+                registerPendingChannels();
+                processCompletions();
+                wheel.advance(nowMillis());
+
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+
+                    if (key.isValid() && key.isWritable()) {
+                        handleWrite(key);
+                    }
+
+                    if (key.isValid() && key.isReadable()) {
+                        handleRead(key);
+                    }
+                }
+            }
+
+            closeChannels();
+        } catch (IOException e) {
+            throw new RuntimeException("There is a problem with the reactor selector", e);
+        }
+    }
+
+    public void stop() {
+        running = false;
+
+        if (selector.isOpen()) {
+            selector.wakeup();
+        }
+    }
+
+    private static long nowMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel socketChannel;
+
+        while ((socketChannel = pendingChannels.poll()) != null) {
+            try {
+                socketChannel.configureBlocking(false);
+                Session session = new Session(capacity, highWaterMark);
+                session.setRemoteAddress(((InetSocketAddress) socketChannel.getRemoteAddress()).getAddress());
+                SelectionKey key = socketChannel.register(selector, SelectionKey.OP_READ, session);
+
+                session.setLastReadMillis(nowMillis());
+                scheduleIdleTimeout(key, session, timeouts.idleMillis());
+            } catch (IOException e) {
+                close(socketChannel);
+            }
+        }
+    }
+
+    private void processCompletions() {
+        Completion completion;
+
+        while ((completion = completions.poll()) != null) {
+            complete(completion);
+        }
+    }
+
+    private void closeChannels() {
+        for (SelectionKey key : selector.keys()) {
+            close(key);
+        }
+    }
+
+    private void close(SelectionKey key) {
+        Session session = (Session) key.attachment();
+
+        if (session != null && key.channel().isOpen()) {
+            pendingOutputBytes.addAndGet(-session.getPendingBytes());
+            queuedCommands.addAndGet(-session.getQueuedCommandCount());
+            session.cancelTimeouts();
+        }
+
+        close((SocketChannel) key.channel());
+    }
+
+    private void close(SocketChannel socketChannel) {
+        if (!socketChannel.isOpen()) {
+            return;
+        }
+
+        connectionCount.decrementAndGet();
+
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            //
+        }
+    }
+
+    private void handleRead(SelectionKey key) {
+        try {
+            read(key);
+        } catch (IOException e) {
+            close(key);
+        }
+    }
+
+    private void handleWrite(SelectionKey key) {
+        Session session = (Session) key.attachment();
+
+        try {
+            flush(key, session);
+        } catch (IOException e) {
+            close(key);
+            return;
+        }
+
+        if (!session.isExecuting() && !session.isOverHighWaterMark()) {
+            dispatch(key, session);
+        }
+    }
+
+    private boolean receiveRequests(SocketChannel socketChannel, Session session) throws IOException {
+        FrameDecoder decoder = session.getDecoder();
+
+        if (decoder.readFrom(socketChannel) < 0) {
+            return false;
+        }
+
+        session.setLastReadMillis(nowMillis());
+
+        ByteBuffer payload;
+
+        while ((payload = decoder.nextPayload()) != null) {
+            session.enqueue(parseCommand(payload, session));
+            queuedCommands.incrementAndGet();
+        }
+
+        return true;
+    }
+
+    private Command parseCommand(ByteBuffer payload, Session session) {
+        if (session.getWireFormat() == WireFormat.BINARY) {
+            return binaryDecoder.decode(payload);
+        }
+
+        Command command = textParser.parse(payload);
+
+        if (Command.PROTOCOL.equals(command.name()) && command.arguments().length == 1) {
+            WireFormat format = WireFormat.of(command.arguments()[0]);
+
+            if (format != null) {
+                session.setWireFormat(format);
+            }
+        }
+
+        return command;
+    }
+
+    private void submitResponses(List<ByteBuffer> responses, SelectionKey key, Session session) throws IOException {
+        for (ByteBuffer response : responses) {
+            session.write(response);
+            pendingOutputBytes.addAndGet(response.remaining());
+        }
+
+        flush(key, session);
+    }
+
+    private void flush(SelectionKey key, Session session) throws IOException {
+        long written = session.flush((SocketChannel) key.channel());
+        pendingOutputBytes.addAndGet(-written);
+
+        if (written > 0) {
+            session.setLastWriteMillis(nowMillis());
+        }
+
+        updateWriteTimeout(key, session);
+        updateInterestOps(key, session);
+    }
+
+    private void updateInterestOps(SelectionKey key, Session session) {
+        boolean readPaused = session.isOverHighWaterMark() || session.getQueuedCommandCount() >= MAX_QUEUED_COMMANDS;
+        int interestOps = readPaused ? 0 : SelectionKey.OP_READ;
+
+        if (session.hasPendingOutput()) {
+            interestOps |= SelectionKey.OP_WRITE;
+        }
+
+        key.interestOps(interestOps);
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel socketChannel = (SocketChannel) key.channel();
+        Session session = (Session) key.attachment();
+
+        if (!receiveRequests(socketChannel, session)) {
+            close(key);
+            return;
+        }
+
+        if (!session.isExecuting() && !session.isOverHighWaterMark()) {
+            dispatch(key, session);
+        }
+
+        updateInterestOps(key, session);
+    }
+
+    private void dispatch(SelectionKey key, Session session) {
+        List<Command> commands = session.nextCommands(MAX_BATCH_SIZE);
+
+        if (commands.isEmpty()) {
+            return;
+        }
+
+        queuedCommands.addAndGet(-commands.size());
+        updateInterestOps(key, session);
+
+        String username = session.getUsername();
+        long outputBudget = highWaterMark - session.getPendingBytes();
+        boolean[] limited = acquire(session.getRemoteAddress(), username, commands);
+        session.setExecuting(true);
+
+        if (limited == null) {
+            completeImmediately(key, username, repeat(FRAME_TOO_MANY_REQUESTS, commands.size()));
+            return;
+        }
+
+        try {
+            workers.execute(() -> execute(key, username, commands, limited, outputBudget));
+        } catch (RejectedExecutionException e) {
+            completeImmediately(key, username, repeat(FrameEncoder.encode(MESSAGE_SERVER_BUSY), commands.size()));
+        }
+    }
+
+    private boolean[] acquire(InetAddress address, String username, List<Command> commands) {
+        boolean[] limited = new boolean[commands.size()];
+        boolean anyAllowed = false;
+
+        for (int i = 0; i < limited.length; i++) {
+            limited[i] = !rateLimiter.tryAcquire(address, username, commands.get(i));
+            anyAllowed |= !limited[i];
+        }
+
+        return anyAllowed ? limited : null;
+    }
+
+    private void completeImmediately(SelectionKey key, String username, List<ByteBuffer> responses) {
+        completions.add(new Completion(key, username, responses, List.of()));
+        selector.wakeup();
+    }
+
+    private static List<ByteBuffer> repeat(ByteBuffer frame, int count) {
+        List<ByteBuffer> responses = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            responses.add(frame.duplicate());
+        }
+
+        return responses;
+    }
+
+    private void execute(SelectionKey key, String username, List<Command> commands, boolean[] limited,
+                         long outputBudget) {
+        List<CompletableFuture<ByteBuffer>> responses = new ArrayList<>(commands.size());
+        List<Command> skipped = List.of();
+        long outputSize = 0;
+
+        for (int i = 0; i < commands.size(); i++) {
+            Command command = commands.get(i);
+
+            if (outputSize >= outputBudget) {
+                skipped = commands.subList(i, commands.size());
+                break;
+            }
+
+            CompletableFuture<ByteBuffer> response;
+
+            if (limited[i]) {
+                response = CompletableFuture.completedFuture(FRAME_TOO_MANY_REQUESTS.duplicate());
+            } else if (Command.LOG_IN.equals(command.name()) || Command.LOG_OUT.equals(command.name())) {
+                String message = executor.execute(username, command);
+
+                if (username == null && Command.LOG_IN.equals(command.name()) && !message.contains(" ")) {
+                    username = message;
+                    message = MESSAGE_WELCOME;
+                } else if (Command.LOG_OUT.equals(command.name())) {
+                    username = null;
+                }
+
+                response = CompletableFuture.completedFuture(FrameEncoder.encode(message));
+            } else {
+                response = executor.submitEncoded(username, command);
+            }
+
+            responses.add(response);
+
+            if (response.isDone()) {
+                outputSize += response.join().remaining();
+            }
+        }
+
+        String finalUsername = username;
+        List<Command> finalSkipped = skipped;
+
+        CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).whenComplete((ignored, exception) -> {
+            completions.add(new Completion(key, finalUsername, join(responses), finalSkipped));
+            selector.wakeup();
+        });
+    }
+
+    private static List<ByteBuffer> join(List<CompletableFuture<ByteBuffer>> responses) {
+        List<ByteBuffer> frames = new ArrayList<>(responses.size());
+
+        for (CompletableFuture<ByteBuffer> response : responses) {
+            frames.add(response.isCompletedExceptionally()
+                ? FrameEncoder.encode(MESSAGE_SERVER_BUSY)
+                : response.join());
+        }
+
+        return frames;
+    }
+
+    private void complete(Completion completion) {
+        SelectionKey key = completion.key();
+        Session session = (Session) key.attachment();
+
+        session.setExecuting(false);
+
+        if (!key.isValid()) {
+            return;
+        }
+
+        updateLogin(key, session, completion.username());
+        session.requeue(completion.skipped());
+        queuedCommands.addAndGet(completion.skipped().size());
+
+        try {
+            submitResponses(completion.responses(), key, session);
+        } catch (IOException e) {
+            close(key);
+            return;
+        }
+
+        if (!session.isOverHighWaterMark()) {
+            dispatch(key, session);
+        }
+    }
+
+    private void scheduleRateLimitEviction() {
+        wheel.schedule(() -> {
+            rateLimiter.evictFullBuckets();
+            scheduleRateLimitEviction();
+        }, RATE_LIMIT_EVICTION_MILLIS);
+    }
+
+    private void scheduleIdleTimeout(SelectionKey key, Session session, long delayMillis) {
+        if (timeouts.hasIdleTimeout()) {
+            session.setIdleTimeout(wheel.schedule(() -> expireIdle(key, session), delayMillis));
+        }
+    }
+
+    private void expireIdle(SelectionKey key, Session session) {
+        if (!key.isValid()) {
+            return;
+        }
+
+        long idleMillis = nowMillis() - session.getLastReadMillis();
+
+        if (session.isExecuting() || session.hasPendingOutput()) {
+            scheduleIdleTimeout(key, session, timeouts.idleMillis());
+        } else if (idleMillis >= timeouts.idleMillis()) {
+            close(key);
+        } else {
+            scheduleIdleTimeout(key, session, timeouts.idleMillis() - idleMillis);
+        }
+    }
+
+    private void updateLogin(SelectionKey key, Session session, String username) {
+        if (session.isLoginExpired()) {
+            session.setLoginExpired(false);
+            username = null;
+        }
+
+        boolean loggedIn = session.isLoggedIn();
+        session.setUsername(username);
+
+        if (loggedIn == session.isLoggedIn() || !timeouts.hasSessionTimeout()) {
+            return;
+        }
+
+        if (session.isLoggedIn()) {
+            session.setLoginTimeout(wheel.schedule(() -> expireLogin(key, session), timeouts.sessionMillis()));
+        } else if (session.getLoginTimeout() != null) {
+            session.getLoginTimeout().cancel();
+            session.setLoginTimeout(null);
+        }
+    }
+
+    private void expireLogin(SelectionKey key, Session session) {
+        session.setLoginTimeout(null);
+
+        if (!key.isValid()) {
+            return;
+        }
+
+        if (session.isExecuting()) {
+            session.setLoginExpired(true);
+        } else {
+            session.setUsername(null);
+        }
+    }
+
+    private void updateWriteTimeout(SelectionKey key, Session session) {
+        if (!session.hasPendingOutput()) {
+            if (session.getWriteTimeout() != null) {
+                session.getWriteTimeout().cancel();
+                session.setWriteTimeout(null);
+            }
+        } else if (session.getWriteTimeout() == null && timeouts.hasWriteTimeout()) {
+            session.setLastWriteMillis(nowMillis());
+            scheduleWriteTimeout(key, session, timeouts.writeMillis());
+        }
+    }
+
+    private void scheduleWriteTimeout(SelectionKey key, Session session, long delayMillis) {
+        session.setWriteTimeout(wheel.schedule(() -> expireWrite(key, session), delayMillis));
+    }
+
+    private void expireWrite(SelectionKey key, Session session) {
+        session.setWriteTimeout(null);
+
+        if (!key.isValid() || !session.hasPendingOutput()) {
+            return;
+        }
+
+        long stalledMillis = nowMillis() - session.getLastWriteMillis();
+
+        if (stalledMillis >= timeouts.writeMillis()) {
+            close(key);
+        } else {
+            scheduleWriteTimeout(key, session, timeouts.writeMillis() - stalledMillis);
+        }
+    }
+
+    private record Completion(SelectionKey key, String username, List<ByteBuffer> responses,
+                              List<Command> skipped) {
+    }
+}
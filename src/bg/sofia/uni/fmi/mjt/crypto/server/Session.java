@@ -0,0 +1,205 @@
+package bg.sofia.uni.fmi.mjt.crypto.server;
+
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.WireFormat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+
+public class Session {
+    private final Deque<Command> commands;
+    private final FrameDecoder decoder;
+    private final Queue<ByteBuffer> output;
+    private final long highWaterMark;
+
+    private InetAddress remoteAddress;
+    private long pendingBytes;
+    private WireFormat wireFormat;
+    private String username;
+    private boolean executing;
+    private boolean loginExpired;
+
+    private long lastReadMillis;
+    private long lastWriteMillis;
+    private TimingWheel.Timeout idleTimeout;
+    private TimingWheel.Timeout loginTimeout;
+    private TimingWheel.Timeout writeTimeout;
+
+    public Session(int capacity, long highWaterMark) {
+        this.commands = new ArrayDeque<>();
+        this.decoder = new FrameDecoder(capacity);
+        this.output = new ArrayDeque<>();
+        this.highWaterMark = highWaterMark;
+        this.wireFormat = WireFormat.TEXT;
+    }
+
+    public FrameDecoder getDecoder() {
+        return decoder;
+    }
+
+    public void write(ByteBuffer buffer) {
+        output.add(buffer);
+        pendingBytes += buffer.remaining();
+    }
+
+    public long flush(GatheringByteChannel channel) throws IOException {
+        if (output.isEmpty()) {
+            return 0;
+        }
+
+        long written = channel.write(output.toArray(new ByteBuffer[0]));
+
+        while (!output.isEmpty() && !output.peek().hasRemaining()) {
+            output.poll();
+        }
+
+        pendingBytes -= written;
+
+        return written;
+    }
+
+    public boolean hasPendingOutput() {
+        return !output.isEmpty();
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    public boolean isOverHighWaterMark() {
+        return pendingBytes >= highWaterMark;
+    }
+
+    public InetAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public void setRemoteAddress(InetAddress remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public boolean isLoggedIn() {
+        return username != null;
+    }
+
+    public void enqueue(Command command) {
+        commands.add(command);
+    }
+
+    public int getQueuedCommandCount() {
+        return commands.size();
+    }
+
+    public List<Command> nextCommands(int limit) {
+        List<Command> batch = new ArrayList<>(Math.min(limit, commands.size()));
+
+        while (batch.size() < limit && !commands.isEmpty()) {
+            Command command = commands.poll();
+            batch.add(command);
+
+            if (Command.LOG_IN.equals(command.name()) || Command.LOG_OUT.equals(command.name())) {
+                break;
+            }
+        }
+
+        return batch;
+    }
+
+    public void requeue(List<Command> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            commands.addFirst(batch.get(i));
+        }
+    }
+
+    public boolean isExecuting() {
+        return executing;
+    }
+
+    public void setExecuting(boolean executing) {
+        this.executing = executing;
+    }
+
+    public boolean isLoginExpired() {
+        return loginExpired;
+    }
+
+    public void setLoginExpired(boolean loginExpired) {
+        this.loginExpired = loginExpired;
+    }
+
+    public long getLastReadMillis() {
+        return lastReadMillis;
+    }
+
+    public void setLastReadMillis(long lastReadMillis) {
+        this.lastReadMillis = lastReadMillis;
+    }
+
+    public long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    public void setLastWriteMillis(long lastWriteMillis) {
+        this.lastWriteMillis = lastWriteMillis;
+    }
+
+    public TimingWheel.Timeout getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(TimingWheel.Timeout idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public TimingWheel.Timeout getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    public void setLoginTimeout(TimingWheel.Timeout loginTimeout) {
+        this.loginTimeout = loginTimeout;
+    }
+
+    public TimingWheel.Timeout getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    public void setWriteTimeout(TimingWheel.Timeout writeTimeout) {
+        this.writeTimeout = writeTimeout;
+    }
+
+    public void cancelTimeouts() {
+        for (TimingWheel.Timeout timeout : new TimingWheel.Timeout[]{idleTimeout, loginTimeout, writeTimeout}) {
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        idleTimeout = null;
+        loginTimeout = null;
+        writeTimeout = null;
+    }
+}
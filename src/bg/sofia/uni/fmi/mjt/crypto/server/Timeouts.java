@@ -0,0 +1,26 @@
+package bg.sofia.uni.fmi.mjt.crypto.server;
+
+public record Timeouts(long idleMillis, long sessionMillis, long writeMillis) {
+    private static final long DEFAULT_IDLE_MILLIS = 5 * 60 * 1000;
+    private static final long DEFAULT_SESSION_MILLIS = 30 * 60 * 1000;
+    private static final long DEFAULT_WRITE_MILLIS = 30 * 1000;
+
+    private static final Timeouts DEFAULTS =
+        new Timeouts(DEFAULT_IDLE_MILLIS, DEFAULT_SESSION_MILLIS, DEFAULT_WRITE_MILLIS);
+
+    public static Timeouts defaults() {
+        return DEFAULTS;
+    }
+
+    public boolean hasIdleTimeout() {
+        return idleMillis > 0;
+    }
+
+    public boolean hasSessionTimeout() {
+        return sessionMillis > 0;
+    }
+
+    public boolean hasWriteTimeout() {
+        return writeMillis > 0;
+    }
+}
@@ -0,0 +1,135 @@
+package bg.sofia.uni.fmi.mjt.crypto.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimingWheel {
+    private final long tickMillis;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long startMillis;
+    private final List<Timeout> expired;
+
+    private long currentTick;
+    private int size;
+    private long visited;
+
+    public TimingWheel(long tickMillis, int wheelSize, long nowMillis) {
+        this.tickMillis = Math.max(tickMillis, 1);
+        this.buckets = new Timeout[Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1];
+        this.mask = buckets.length - 1;
+        this.startMillis = nowMillis;
+        this.expired = new ArrayList<>();
+
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Timeout(this, null);
+        }
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getVisitedCount() {
+        return visited;
+    }
+
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        Timeout timeout = new Timeout(this, task);
+
+        timeout.rounds = (ticks - 1) / buckets.length;
+        timeout.linkBefore(buckets[(int) ((currentTick + ticks) & mask)]);
+        size++;
+
+        return timeout;
+    }
+
+    public int advance(long nowMillis) {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+
+        while (currentTick < targetTick) {
+            currentTick++;
+            collectExpired(buckets[(int) (currentTick & mask)]);
+        }
+
+        int fired = 0;
+
+        for (Timeout timeout : expired) {
+            if (!timeout.cancelled) {
+                timeout.task.run();
+                fired++;
+            }
+        }
+
+        expired.clear();
+
+        return fired;
+    }
+
+    private void collectExpired(Timeout head) {
+        Timeout timeout = head.next;
+
+        while (timeout != head) {
+            Timeout next = timeout.next;
+            visited++;
+
+            if (timeout.rounds == 0) {
+                timeout.unlink();
+                expired.add(timeout);
+            } else {
+                timeout.rounds--;
+            }
+
+            timeout = next;
+        }
+    }
+
+    public static class Timeout {
+        private final TimingWheel wheel;
+        private final Runnable task;
+
+        private Timeout previous;
+        private Timeout next;
+        private long rounds;
+        private boolean cancelled;
+
+        private Timeout(TimingWheel wheel, Runnable task) {
+            this.wheel = wheel;
+            this.task = task;
+            this.previous = this;
+            this.next = this;
+        }
+
+        public void cancel() {
+            cancelled = true;
+
+            if (next != this) {
+                unlink();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void linkBefore(Timeout head) {
+            previous = head.previous;
+            next = head;
+            head.previous.next = this;
+            head.previous = this;
+        }
+
+        private void unlink() {
+            previous.next = next;
+            next.previous = previous;
+            previous = this;
+            next = this;
+            wheel.size--;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package bg.sofia.uni.fmi.mjt.crypto.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+class TokenBucket {
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final AtomicLong emptyAtNanos;
+
+    TokenBucket(RateLimit limit, long nowNanos) {
+        this.intervalNanos = Math.max(1, (long) (NANOS_PER_SECOND / limit.permitsPerSecond()));
+        this.capacityNanos = intervalNanos * limit.burst();
+        this.emptyAtNanos = new AtomicLong(nowNanos);
+    }
+
+    boolean tryAcquire(int cost, long nowNanos) {
+        long costNanos = intervalNanos * cost;
+
+        while (true) {
+            long emptyAt = emptyAtNanos.get();
+            long next = Math.max(emptyAt, nowNanos) + costNanos;
+
+            if (next - nowNanos > capacityNanos) {
+                return false;
+            }
+
+            if (emptyAtNanos.compareAndSet(emptyAt, next)) {
+                return true;
+            }
+        }
+    }
+
+    void refund(int cost) {
+        emptyAtNanos.addAndGet(-intervalNanos * cost);
+    }
+
+    boolean isFull(long nowNanos) {
+        return emptyAtNanos.get() - nowNanos <= 0;
+    }
+}
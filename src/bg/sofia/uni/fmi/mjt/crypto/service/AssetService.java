@@ -3,10 +3,21 @@ package bg.sofia.uni.fmi.mjt.crypto.service;
 import bg.sofia.uni.fmi.mjt.crypto.dto.Asset;
 import bg.sofia.uni.fmi.mjt.crypto.exception.AssetServiceException;
 
+import java.util.List;
 import java.util.Set;
 
 public interface AssetService {
     Asset getAsset(String id) throws AssetServiceException;
 
     Set<Asset> getAssets() throws AssetServiceException;
+
+    default List<Asset> getTopAssets(int limit) throws AssetServiceException {
+        TopAssets topAssets = new TopAssets(limit);
+
+        for (Asset asset : getAssets()) {
+            topAssets.offer(asset);
+        }
+
+        return topAssets.toList();
+    }
 }
@@ -0,0 +1,69 @@
+package bg.sofia.uni.fmi.mjt.crypto.service;
+
+import bg.sofia.uni.fmi.mjt.crypto.dto.Asset;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+class AssetTypeAdapter extends TypeAdapter<Asset> {
+    private static final String FIELD_ID = "asset_id";
+    private static final String FIELD_NAME = "name";
+    private static final String FIELD_IS_CRYPTO = "type_is_crypto";
+    private static final String FIELD_PRICE = "price_usd";
+
+    @Override
+    public void write(JsonWriter writer, Asset asset) throws IOException {
+        writer.beginObject()
+            .name(FIELD_ID).value(asset.getId())
+            .name(FIELD_NAME).value(asset.getName())
+            .name(FIELD_IS_CRYPTO).value(asset.isCrypto() ? 1 : 0)
+            .name(FIELD_PRICE).value(asset.getPrice())
+            .endObject();
+    }
+
+    @Override
+    public Asset read(JsonReader reader) throws IOException {
+        return read(reader, false);
+    }
+
+    Asset readCrypto(JsonReader reader) throws IOException {
+        return read(reader, true);
+    }
+
+    private Asset read(JsonReader reader, boolean cryptoOnly) throws IOException {
+        String id = null;
+        String name = null;
+        Boolean isCrypto = null;
+        double price = 0.0;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+
+            if (reader.peek() == JsonToken.NULL || Boolean.FALSE.equals(isCrypto) && cryptoOnly) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch (field) {
+                case FIELD_ID -> id = reader.nextString();
+                case FIELD_NAME -> name = reader.nextString();
+                case FIELD_IS_CRYPTO -> isCrypto = reader.nextInt() == 1;
+                case FIELD_PRICE -> price = reader.nextDouble();
+                default -> reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        if (cryptoOnly && (id == null || !Boolean.TRUE.equals(isCrypto))) {
+            return null;
+        }
+
+        return new Asset(id, name, Boolean.TRUE.equals(isCrypto), price);
+    }
+}
@@ -9,16 +9,20 @@ import bg.sofia.uni.fmi.mjt.crypto.exception.TooManyRequestsException;
 import bg.sofia.uni.fmi.mjt.crypto.exception.UnauthorizedException;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class DefaultAssetService implements AssetService {
@@ -43,6 +47,7 @@ public class DefaultAssetService implements AssetService {
     private static final int API_STATUS_CODE_TOO_MANY_REQUESTS = 429;
     private static final int API_STATUS_CODE_NO_DATA = 550;
 
+    private static final AssetTypeAdapter ASSET_ADAPTER = new AssetTypeAdapter();
     private static final Gson GSON = buildCustomGson();
 
     private final HttpClient httpClient;
@@ -57,31 +62,80 @@ public class DefaultAssetService implements AssetService {
 
     @Override
     public Asset getAsset(String id) throws AssetServiceException {
-        HttpResponse<String> response = submitRequest(FORMAT_API_PATH_TO_ASSET.formatted(id));
+        HttpResponse<String> response = submitRequest(FORMAT_API_PATH_TO_ASSET.formatted(id),
+            HttpResponse.BodyHandlers.ofString());
+        requireOk(response);
 
         return GSON.fromJson(response.body(), Asset.class);
     }
 
     @Override
     public Set<Asset> getAssets() throws AssetServiceException {
-        HttpResponse<String> response = submitRequest(API_PATH);
-        Type setType = new TypeToken<Set<Asset>>() { }.getType();
+        return streamAssets(DefaultAssetService::readCryptoAssets);
+    }
 
-        return GSON.fromJson(response.body(), setType);
+    @Override
+    public List<Asset> getTopAssets(int limit) throws AssetServiceException {
+        return streamAssets(reader -> readTopCryptoAssets(reader, limit));
+    }
+
+    static Set<Asset> readCryptoAssets(JsonReader reader) throws IOException {
+        Set<Asset> assets = new HashSet<>();
+
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+            Asset asset = ASSET_ADAPTER.readCrypto(reader);
+
+            if (asset != null) {
+                assets.add(asset);
+            }
+        }
+
+        reader.endArray();
+
+        return assets;
+    }
+
+    static List<Asset> readTopCryptoAssets(JsonReader reader, int limit) throws IOException {
+        TopAssets topAssets = new TopAssets(limit);
+
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+            Asset asset = ASSET_ADAPTER.readCrypto(reader);
+
+            if (asset != null) {
+                topAssets.offer(asset);
+            }
+        }
+
+        reader.endArray();
+
+        return topAssets.toList();
     }
 
     private static Gson buildCustomGson() {
         GsonBuilder builder = new GsonBuilder();
-
-        JsonDeserializer<Boolean> booleanDeserializer = (jsonElement, t, c) -> jsonElement.getAsInt() == 1;
-        builder.registerTypeAdapter(boolean.class, booleanDeserializer);
+        builder.registerTypeAdapter(Asset.class, ASSET_ADAPTER);
 
         return builder.create();
     }
 
-    private HttpResponse<String> submitRequest(String path) throws AssetServiceException {
-        HttpResponse<String> response;
+    private <T> T streamAssets(AssetsReader<T> assetsReader) throws AssetServiceException {
+        HttpResponse<InputStream> response = submitRequest(API_PATH, HttpResponse.BodyHandlers.ofInputStream());
+
+        try (InputStream body = response.body()) {
+            requireOk(response);
+
+            return assetsReader.read(new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw new AssetServiceException("Could not parse assets", e);
+        }
+    }
 
+    private <T> HttpResponse<T> submitRequest(String path, HttpResponse.BodyHandler<T> bodyHandler)
+        throws AssetServiceException {
         try {
             URI uri = new URI(API_SCHEME, API_HOST, path, API_QUERY, API_FRAGMENT);
             HttpRequest request = HttpRequest.newBuilder(uri)
@@ -89,18 +143,18 @@ public class DefaultAssetService implements AssetService {
                 .header(API_HEADER_ACCEPT, API_ACCEPT_JSON)
                 .build();
 
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-            int statusCode = response.statusCode();
-
-            if (statusCode != API_STATUS_CODE_OK) {
-                throwCorrespondingException(statusCode);
-            }
+            return httpClient.send(request, bodyHandler);
         } catch (URISyntaxException | IOException | InterruptedException e) {
             throw new AssetServiceException("Could not fetch asset(s)", e);
         }
+    }
 
-        return response;
+    private void requireOk(HttpResponse<?> response) throws AssetServiceException {
+        int statusCode = response.statusCode();
+
+        if (statusCode != API_STATUS_CODE_OK) {
+            throwCorrespondingException(statusCode);
+        }
     }
 
     private void throwCorrespondingException(int statusCode) throws AssetServiceException {
@@ -113,4 +167,9 @@ public class DefaultAssetService implements AssetService {
             default -> new AssetServiceException("Unexpected error");
         };
     }
+
+    @FunctionalInterface
+    private interface AssetsReader<T> {
+        T read(JsonReader reader) throws IOException;
+    }
 }
@@ -0,0 +1,40 @@
+package bg.sofia.uni.fmi.mjt.crypto.service;
+
+import bg.sofia.uni.fmi.mjt.crypto.dto.Asset;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+class TopAssets {
+    private static final Comparator<Asset> BY_PRICE = Comparator.comparingDouble(Asset::getPrice);
+
+    private final int limit;
+    private final PriorityQueue<Asset> heap;
+
+    TopAssets(int limit) {
+        this.limit = Math.max(limit, 0);
+        this.heap = new PriorityQueue<>(this.limit + 1, BY_PRICE);
+    }
+
+    void offer(Asset asset) {
+        if (limit == 0 || !asset.isCrypto()) {
+            return;
+        }
+
+        if (heap.size() < limit) {
+            heap.add(asset);
+        } else if (BY_PRICE.compare(asset, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(asset);
+        }
+    }
+
+    List<Asset> toList() {
+        List<Asset> assets = new ArrayList<>(heap);
+        assets.sort(BY_PRICE.reversed());
+
+        return assets;
+    }
+}
@@ -14,4 +14,8 @@ public interface AssetStorage {
     Double getAssetPrice(String id) throws AssetStorageException;
 
     Map<String, Double> getAssetPrices(List<String> ids) throws AssetStorageException;
+
+    long getEpoch() throws AssetStorageException;
+
+    PriceSnapshot getPriceSnapshot() throws AssetStorageException;
 }
@@ -3,10 +3,24 @@ package bg.sofia.uni.fmi.mjt.crypto.storage;
 import bg.sofia.uni.fmi.mjt.crypto.exception.UserAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface CryptoUserStorage {
     CryptoUser get(String username);
 
     void add(CryptoUser user) throws UserAlreadyExistsException;
 
     void update(CryptoUser user);
+
+    CompletableFuture<Void> backup(String backupPath);
+
+    default CompletableFuture<Void> addAsync(CryptoUser user) throws UserAlreadyExistsException {
+        add(user);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    default CompletableFuture<Void> updateAsync(CryptoUser user) {
+        update(user);
+        return CompletableFuture.completedFuture(null);
+    }
 }
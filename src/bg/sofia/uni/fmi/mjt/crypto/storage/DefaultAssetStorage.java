@@ -3,27 +3,35 @@ package bg.sofia.uni.fmi.mjt.crypto.storage;
 import bg.sofia.uni.fmi.mjt.crypto.dto.Asset;
 import bg.sofia.uni.fmi.mjt.crypto.exception.AssetServiceException;
 import bg.sofia.uni.fmi.mjt.crypto.exception.AssetStorageException;
-import bg.sofia.uni.fmi.mjt.crypto.exception.UnknownAssetException;
 import bg.sofia.uni.fmi.mjt.crypto.service.AssetService;
 import bg.sofia.uni.fmi.mjt.crypto.service.DefaultAssetService;
 
-import java.time.LocalDateTime;
-import java.util.Comparator;
+import java.io.Closeable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-public class DefaultAssetStorage implements AssetStorage {
+public class DefaultAssetStorage implements AssetStorage, Closeable {
     private static final int DEFAULT_UPDATE_INTERVAL = 30;
     private static final int DEFAULT_ASSET_LIMIT = 150;
 
     private final AssetService assetService;
+    private final AtomicLong refreshFailures;
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight;
 
-    private Map<String, Asset> assets;
-    private LocalDateTime lastUpdate;
-    private int updateInterval;
-    private int assetLimit;
+    private volatile Snapshot snapshot;
+    private volatile long lastRefreshDurationNanos;
+    private volatile ScheduledExecutorService refresher;
+    private volatile int updateInterval;
+    private volatile int assetLimit;
 
     public DefaultAssetStorage() {
         this(new DefaultAssetService(), DEFAULT_UPDATE_INTERVAL, DEFAULT_ASSET_LIMIT);
@@ -35,6 +43,8 @@ public class DefaultAssetStorage implements AssetStorage {
 
     public DefaultAssetStorage(AssetService assetService, int updateInterval, int assetLimit) {
         this.assetService = assetService;
+        this.refreshFailures = new AtomicLong();
+        this.inFlight = new AtomicReference<>();
         setUpdateInterval(updateInterval);
         setAssetLimit(assetLimit);
     }
@@ -55,66 +65,153 @@ public class DefaultAssetStorage implements AssetStorage {
         this.assetLimit = assetLimit >= 0 ? assetLimit : DEFAULT_ASSET_LIMIT;
     }
 
-    @Override
-    public Asset getAsset(String id) throws AssetStorageException {
-        requireUpToDate();
+    public void startRefresher() {
+        startRefresher(TimeUnit.MINUTES.toMillis(Math.max(updateInterval, 1)));
+    }
 
-        if (!assets.containsKey(id)) {
-            throw new UnknownAssetException("Unknown asset: " + id);
+    synchronized void startRefresher(long periodMillis) {
+        if (refresher != null) {
+            return;
         }
 
-        return assets.get(id);
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "asset-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        refresher.scheduleWithFixedDelay(this::refreshInBackground, 0, periodMillis, TimeUnit.MILLISECONDS);
     }
 
     @Override
-    public List<Asset> getAssets() throws AssetStorageException {
-        requireUpToDate();
+    public synchronized void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
 
-        return List.copyOf(assets.values());
+    public long getStalenessMillis() {
+        Snapshot current = snapshot;
+
+        return current == null ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - current.loadedNanos());
+    }
+
+    public long getLastRefreshDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastRefreshDurationNanos);
+    }
+
+    public long getRefreshFailures() {
+        return refreshFailures.get();
     }
 
     @Override
-    public Double getAssetPrice(String id) throws AssetStorageException {
-        requireUpToDate();
+    public Asset getAsset(String id) throws AssetStorageException {
+        return getPriceSnapshot().getAsset(id);
+    }
 
-        Asset asset = assets.get(id);
-        return asset != null ? asset.getPrice() : 0.0;
+    @Override
+    public List<Asset> getAssets() throws AssetStorageException {
+        return getPriceSnapshot().getAssets();
+    }
+
+    @Override
+    public Double getAssetPrice(String id) throws AssetStorageException {
+        return getPriceSnapshot().getPrice(id);
     }
 
     @Override
     public Map<String, Double> getAssetPrices(List<String> ids) throws AssetStorageException {
-        requireUpToDate();
+        return getPriceSnapshot().getPrices(ids);
+    }
+
+    @Override
+    public long getEpoch() throws AssetStorageException {
+        return getPriceSnapshot().getEpoch();
+    }
 
-        return ids.stream()
-            .collect(Collectors.toMap(Function.identity(), id -> {
-                try {
-                    return getAssetPrice(id);
-                } catch (AssetStorageException e) {
-                    return 0.0;
-                }
-            }));
+    @Override
+    public PriceSnapshot getPriceSnapshot() throws AssetStorageException {
+        return requireUpToDate().prices();
     }
 
-    private void requireUpToDate() throws AssetStorageException {
-        if (!isUpToDate()) {
-            update();
+    private Snapshot requireUpToDate() throws AssetStorageException {
+        Snapshot current = snapshot;
+
+        if (current != null && (refresher != null || isUpToDate(current))) {
+            return current;
         }
+
+        return refresh(current);
     }
 
-    private boolean isUpToDate() {
-        return lastUpdate != null && lastUpdate.plusMinutes(updateInterval).isAfter(LocalDateTime.now());
+    private boolean isUpToDate(Snapshot current) {
+        return System.nanoTime() - current.loadedNanos() < TimeUnit.MINUTES.toNanos(updateInterval);
     }
 
-    private void update() throws AssetStorageException {
+    private void refreshInBackground() {
         try {
-            assets = assetService.getAssets().stream()
-                .filter(Asset::isCrypto)
-                .sorted(Comparator.comparingDouble(Asset::getPrice).reversed())
-                .limit(assetLimit)
-                .collect(Collectors.toMap(Asset::getId, Function.identity()));
-            lastUpdate = LocalDateTime.now();
+            refresh(snapshot);
+        } catch (AssetStorageException e) {
+            //
+        }
+    }
+
+    private Snapshot refresh(Snapshot seen) throws AssetStorageException {
+        CompletableFuture<Snapshot> flight = new CompletableFuture<>();
+        CompletableFuture<Snapshot> existing = inFlight.compareAndExchange(null, flight);
+
+        if (existing != null) {
+            return seen != null ? seen : join(existing);
+        }
+
+        try {
+            Snapshot current = snapshot;
+            Snapshot loaded = current != seen ? current : load();
+
+            flight.complete(loaded);
+
+            return loaded;
+        } catch (AssetStorageException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.set(null);
+        }
+    }
+
+    private Snapshot join(CompletableFuture<Snapshot> flight) throws AssetStorageException {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AssetStorageException cause) {
+                throw cause;
+            }
+
+            throw new AssetStorageException("Could not load data", e.getCause());
+        }
+    }
+
+    private Snapshot load() throws AssetStorageException {
+        long start = System.nanoTime();
+
+        try {
+            Map<String, Asset> assets = assetService.getTopAssets(assetLimit).stream()
+                .collect(Collectors.toMap(Asset::getId, Function.identity(), (first, second) -> first));
+
+            Snapshot previous = snapshot;
+            long epoch = previous == null ? 1 : previous.prices().getEpoch() + 1;
+            snapshot = new Snapshot(new PriceSnapshot(epoch, assets.values()), System.nanoTime());
+
+            return snapshot;
         } catch (AssetServiceException e) {
+            refreshFailures.incrementAndGet();
             throw new AssetStorageException("Could not load data", e);
+        } finally {
+            lastRefreshDurationNanos = System.nanoTime() - start;
         }
     }
+
+    private record Snapshot(PriceSnapshot prices, long loadedNanos) {
+    }
 }
@@ -6,70 +6,344 @@ import bg.sofia.uni.fmi.mjt.crypto.user.DefaultCryptoUser;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public class DefaultCryptoUserStorage implements CryptoUserStorage {
+public class DefaultCryptoUserStorage implements CryptoUserStorage, Closeable {
     private static final String LINE_SEPARATOR = System.lineSeparator();
 
+    static final String LOG_SUFFIX = ".log";
+    static final String ROTATED_LOG_SUFFIX = ".log.old";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 10_000;
+    private static final long DEFAULT_BATCH_WINDOW_NANOS = 0;
+    private static final int LOCK_STRIPES = 256;
+
     private final Map<String, CryptoUser> users;
-    private final String filePath;
+    private final Map<String, String> serializedUsers;
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final Path rotatedLogPath;
+    private final int compactionThreshold;
+    private final ExecutorService compactor;
+    private final AtomicBoolean compacting;
+    private final UserLogWriter log;
+    private final ReadWriteLock compactionLock;
+    private final Object[] userLocks;
+    private final AtomicInteger logRecords;
+
+    private volatile long lastBackupPauseNanos;
 
     public DefaultCryptoUserStorage(String filePath) {
-        this.users = new HashMap<>();
-        this.filePath = filePath;
+        this(filePath, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public DefaultCryptoUserStorage(String filePath, int compactionThreshold) {
+        this(filePath, compactionThreshold, DEFAULT_BATCH_WINDOW_NANOS);
+    }
+
+    public DefaultCryptoUserStorage(String filePath, int compactionThreshold, long batchWindowNanos) {
+        this.users = new ConcurrentHashMap<>();
+        this.serializedUsers = new ConcurrentHashMap<>();
+        this.snapshotPath = Path.of(filePath);
+        this.logPath = Path.of(filePath + LOG_SUFFIX);
+        this.rotatedLogPath = Path.of(filePath + ROTATED_LOG_SUFFIX);
+        this.compactionThreshold = compactionThreshold;
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-storage-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compacting = new AtomicBoolean();
+        this.compactionLock = new ReentrantReadWriteLock();
+        this.userLocks = new Object[LOCK_STRIPES];
+        this.logRecords = new AtomicInteger();
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            userLocks[i] = new Object();
+        }
 
         load();
+        this.log = openLog(batchWindowNanos);
     }
 
     @Override
     public CryptoUser get(String username) {
-        return users.get(username);
+        return username == null ? null : users.get(username);
     }
 
     @Override
     public void add(CryptoUser user) throws UserAlreadyExistsException {
-        if (users.containsKey(user.getUsername())) {
-            throw new UserAlreadyExistsException("Username is taken");
+        await(addAsync(user));
+    }
+
+    @Override
+    public void update(CryptoUser user) {
+        await(updateAsync(user));
+    }
+
+    @Override
+    public CompletableFuture<Void> addAsync(CryptoUser user) throws UserAlreadyExistsException {
+        CompletableFuture<Void> durable;
+
+        compactionLock.readLock().lock();
+
+        try {
+            synchronized (userLock(user.getUsername())) {
+                if (users.putIfAbsent(user.getUsername(), user) != null) {
+                    throw new UserAlreadyExistsException("Username is taken");
+                }
+
+                durable = append(user);
+            }
+        } finally {
+            compactionLock.readLock().unlock();
         }
 
-        users.put(user.getUsername(), user);
+        return durable;
     }
 
     @Override
-    public void update(CryptoUser user) {
-        users.replace(user.getUsername(), user);
+    public CompletableFuture<Void> updateAsync(CryptoUser user) {
+        CompletableFuture<Void> durable;
 
-        persist();
+        compactionLock.readLock().lock();
+
+        try {
+            synchronized (userLock(user.getUsername())) {
+                if (users.replace(user.getUsername(), user) == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                durable = append(user);
+            }
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+
+        return durable;
     }
 
-    private void persist() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            for (CryptoUser user : users.values()) {
-                writer.write(user + LINE_SEPARATOR);
+    public void compact() {
+        try {
+            List<String> lines;
+            CompletableFuture<Void> rotated;
+
+            compactionLock.writeLock().lock();
+
+            try {
+                lines = List.copyOf(serializedUsers.values());
+
+                logRecords.set(0);
+                rotated = log.rotate(rotatedLogPath);
+            } finally {
+                compactionLock.writeLock().unlock();
             }
+
+            rotated.join();
+            writeSnapshot(lines, snapshotPath);
+            Files.deleteIfExists(rotatedLogPath);
+        } catch (IOException | CompletionException exception) {
+            throw new RuntimeException("Could not compact users", exception);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> backup(String backupPath) {
+        List<String> lines = capture();
+
+        return CompletableFuture.runAsync(() -> writeBackup(lines, backupPath), compactor);
+    }
+
+    List<String> capture() {
+        List<String> lines;
+        long start = System.nanoTime();
+
+        compactionLock.writeLock().lock();
+
+        try {
+            lines = List.copyOf(serializedUsers.values());
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+
+        lastBackupPauseNanos = System.nanoTime() - start;
+
+        return lines;
+    }
+
+    static void writeBackup(List<String> lines, String backupPath) {
+        try {
+            writeSnapshot(lines, Path.of(backupPath));
         } catch (IOException exception) {
-            throw new RuntimeException("Could not persist users", exception);
+            throw new RuntimeException("Could not back up users", exception);
         }
     }
 
-    private void load() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
+    long getLastBackupPauseNanos() {
+        return lastBackupPauseNanos;
+    }
 
-            while ((line = reader.readLine()) != null) {
-                CryptoUser user = DefaultCryptoUser.of(line);
+    long getForceCount() {
+        return log.getForceCount();
+    }
+
+    int getLargestBatchSize() {
+        return log.getLargestBatchSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        log.close();
+    }
 
-                users.put(user.getUsername(), user);
+    private CompletableFuture<Void> append(CryptoUser user) {
+        String line = user.toString();
+        serializedUsers.put(user.getUsername(), line);
+
+        CompletableFuture<Void> durable = log.append(line).exceptionallyCompose(exception ->
+            CompletableFuture.failedFuture(new RuntimeException("Could not persist users", unwrap(exception))));
+
+        if (logRecords.incrementAndGet() >= compactionThreshold) {
+            scheduleCompaction();
+        }
+
+        return durable;
+    }
+
+    private Object userLock(String username) {
+        return userLocks[Math.floorMod(username.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static void await(CompletableFuture<Void> durable) {
+        try {
+            durable.join();
+        } catch (CompletionException exception) {
+            throw (RuntimeException) exception.getCause();
+        }
+    }
+
+    private static Throwable unwrap(Throwable exception) {
+        return exception instanceof CompletionException && exception.getCause() != null
+            ? exception.getCause()
+            : exception;
+    }
+
+    private void scheduleCompaction() {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (RuntimeException exception) {
+                    //
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            compacting.set(false);
+        }
+    }
+
+    private UserLogWriter openLog(long batchWindowNanos) {
+        try {
+            return new UserLogWriter(logPath, batchWindowNanos);
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not open user log", exception);
+        }
+    }
+
+    private static void writeSnapshot(List<String> lines, Path path) throws IOException {
+        Path temporaryPath = Path.of(path + TEMPORARY_SUFFIX);
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line + LINE_SEPARATOR);
             }
-        } catch (FileNotFoundException exception) {
-            //
+        }
+
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void load() {
+        try {
+            read(snapshotPath);
+            logRecords.set(replay(rotatedLogPath) + replay(logPath));
         } catch (IOException exception) {
             throw new RuntimeException("Could not retrieve users", exception);
         }
     }
+
+    private int read(Path path) throws IOException {
+        int records = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+
+            while (line != null) {
+                String next = reader.readLine();
+                CryptoUser user = parse(line, next == null);
+
+                if (user != null) {
+                    users.put(user.getUsername(), user);
+                    serializedUsers.put(user.getUsername(), line);
+                    records++;
+                }
+
+                line = next;
+            }
+        } catch (NoSuchFileException exception) {
+            //
+        }
+
+        return records;
+    }
+
+    private int replay(Path path) throws IOException {
+        List<String> records = UserLogWriter.recover(path);
+
+        for (String record : records) {
+            CryptoUser user = parse(record, false);
+
+            users.put(user.getUsername(), user);
+            serializedUsers.put(user.getUsername(), record);
+        }
+
+        return records.size();
+    }
+
+    private static CryptoUser parse(String line, boolean last) throws IOException {
+        try {
+            return DefaultCryptoUser.of(line);
+        } catch (RuntimeException exception) {
+            if (last) {
+                return null;
+            }
+
+            throw new IOException("Malformed user record", exception);
+        }
+    }
 }
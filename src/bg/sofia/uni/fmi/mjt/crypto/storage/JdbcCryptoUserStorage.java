@@ -0,0 +1,374 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import bg.sofia.uni.fmi.mjt.crypto.exception.UserAlreadyExistsException;
+import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
+import bg.sofia.uni.fmi.mjt.crypto.user.DefaultCryptoUser;
+import bg.sofia.uni.fmi.mjt.crypto.wallet.CryptoWallet;
+import bg.sofia.uni.fmi.mjt.crypto.wallet.DefaultCryptoWallet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public class JdbcCryptoUserStorage implements CryptoUserStorage, Closeable {
+    private static final String CREATE_USERS = "CREATE TABLE IF NOT EXISTS users ("
+        + "username VARCHAR(255) PRIMARY KEY, "
+        + "password VARCHAR(255) NOT NULL, "
+        + "balance DOUBLE PRECISION NOT NULL)";
+    private static final String CREATE_POSITIONS = "CREATE TABLE IF NOT EXISTS positions ("
+        + "username VARCHAR(255) NOT NULL REFERENCES users (username), "
+        + "asset_id VARCHAR(64) NOT NULL, "
+        + "quantity DOUBLE PRECISION NOT NULL, "
+        + "entry_price DOUBLE PRECISION NOT NULL, "
+        + "PRIMARY KEY (username, asset_id))";
+    private static final String CREATE_POSITIONS_INDEX =
+        "CREATE INDEX IF NOT EXISTS positions_asset_id ON positions (asset_id)";
+
+    private static final String SELECT_USER = "SELECT password, balance FROM users WHERE username = ?";
+    private static final String SELECT_POSITIONS =
+        "SELECT asset_id, quantity, entry_price FROM positions WHERE username = ?";
+    private static final String SELECT_HOLDERS = "SELECT username FROM positions WHERE asset_id = ?";
+    private static final String SELECT_ALL_USERS = "SELECT username, password, balance FROM users";
+    private static final String SELECT_ALL_POSITIONS =
+        "SELECT username, asset_id, quantity, entry_price FROM positions";
+    private static final String INSERT_USER = "INSERT INTO users (username, password, balance) VALUES (?, ?, ?)";
+    private static final String UPDATE_BALANCE = "UPDATE users SET balance = ? WHERE username = ?";
+    private static final String INSERT_POSITION =
+        "INSERT INTO positions (username, asset_id, quantity, entry_price) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_POSITION =
+        "UPDATE positions SET quantity = ?, entry_price = ? WHERE username = ? AND asset_id = ?";
+    private static final String DELETE_POSITION = "DELETE FROM positions WHERE username = ? AND asset_id = ?";
+
+    private final Connection connection;
+    private final Map<String, CryptoUser> users;
+    private final Map<String, StoredWallet> storedWallets;
+
+    private final PreparedStatement selectUser;
+    private final PreparedStatement selectPositions;
+    private final PreparedStatement selectHolders;
+    private final PreparedStatement insertUser;
+    private final PreparedStatement updateBalance;
+    private final PreparedStatement insertPosition;
+    private final PreparedStatement updatePosition;
+    private final PreparedStatement deletePosition;
+
+    private long writtenPositionCount;
+
+    public JdbcCryptoUserStorage(String url) {
+        this.users = new HashMap<>();
+        this.storedWallets = new HashMap<>();
+
+        try {
+            this.connection = DriverManager.getConnection(url);
+
+            createSchema();
+            connection.setAutoCommit(false);
+
+            this.selectUser = connection.prepareStatement(SELECT_USER);
+            this.selectPositions = connection.prepareStatement(SELECT_POSITIONS);
+            this.selectHolders = connection.prepareStatement(SELECT_HOLDERS);
+            this.insertUser = connection.prepareStatement(INSERT_USER);
+            this.updateBalance = connection.prepareStatement(UPDATE_BALANCE);
+            this.insertPosition = connection.prepareStatement(INSERT_POSITION);
+            this.updatePosition = connection.prepareStatement(UPDATE_POSITION);
+            this.deletePosition = connection.prepareStatement(DELETE_POSITION);
+        } catch (SQLException exception) {
+            throw new RuntimeException("Could not open user database", exception);
+        }
+    }
+
+    @Override
+    public synchronized CryptoUser get(String username) {
+        if (username == null) {
+            return null;
+        }
+
+        CryptoUser user = users.get(username);
+
+        if (user == null) {
+            try {
+                user = read(username);
+            } catch (SQLException exception) {
+                throw new RuntimeException("Could not retrieve users", exception);
+            }
+        }
+
+        return user;
+    }
+
+    @Override
+    public synchronized void add(CryptoUser user) throws UserAlreadyExistsException {
+        if (get(user.getUsername()) != null) {
+            throw new UserAlreadyExistsException("Username is taken");
+        }
+
+        StoredWallet wallet = StoredWallet.of(user.getWallet());
+
+        try {
+            insertUser.setString(1, user.getUsername());
+            insertUser.setString(2, user.getPassword());
+            insertUser.setDouble(3, wallet.balance());
+            insertUser.executeUpdate();
+
+            for (Map.Entry<String, Position> position : wallet.positions().entrySet()) {
+                addPosition(insertPosition, user.getUsername(), position.getKey(), position.getValue());
+            }
+
+            executeBatch(insertPosition);
+            connection.commit();
+        } catch (SQLException exception) {
+            rollback();
+            throw new RuntimeException("Could not persist users", exception);
+        }
+
+        users.put(user.getUsername(), user);
+        storedWallets.put(user.getUsername(), wallet);
+    }
+
+    @Override
+    public synchronized void update(CryptoUser user) {
+        if (get(user.getUsername()) == null) {
+            return;
+        }
+
+        String username = user.getUsername();
+        StoredWallet previous = storedWallets.get(username);
+        StoredWallet current = StoredWallet.of(user.getWallet());
+
+        try {
+            if (Double.compare(previous.balance(), current.balance()) != 0) {
+                updateBalance.setDouble(1, current.balance());
+                updateBalance.setString(2, username);
+                updateBalance.executeUpdate();
+            }
+
+            upsertPositions(username, previous, current);
+            deletePositions(username, previous, current);
+            connection.commit();
+        } catch (SQLException exception) {
+            rollback();
+            throw new RuntimeException("Could not persist users", exception);
+        }
+
+        users.put(username, user);
+        storedWallets.put(username, current);
+    }
+
+    @Override
+    public CompletableFuture<Void> backup(String backupPath) {
+        List<String> lines;
+
+        try {
+            lines = readAll();
+        } catch (SQLException exception) {
+            return CompletableFuture.failedFuture(new RuntimeException("Could not back up users", exception));
+        }
+
+        try {
+            DefaultCryptoUserStorage.writeBackup(lines, backupPath);
+        } catch (RuntimeException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public synchronized List<String> getHolders(String assetId) {
+        List<String> holders = new ArrayList<>();
+
+        try {
+            selectHolders.setString(1, assetId);
+
+            try (ResultSet resultSet = selectHolders.executeQuery()) {
+                while (resultSet.next()) {
+                    holders.add(resultSet.getString(1));
+                }
+            }
+
+            connection.commit();
+        } catch (SQLException exception) {
+            throw new RuntimeException("Could not retrieve users", exception);
+        }
+
+        return holders;
+    }
+
+    synchronized long getWrittenPositionCount() {
+        return writtenPositionCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException exception) {
+            throw new IOException("Could not close user database", exception);
+        }
+    }
+
+    private void createSchema() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_USERS);
+            statement.execute(CREATE_POSITIONS);
+            statement.execute(CREATE_POSITIONS_INDEX);
+        }
+    }
+
+    private CryptoUser read(String username) throws SQLException {
+        String password;
+        double balance;
+
+        selectUser.setString(1, username);
+
+        try (ResultSet resultSet = selectUser.executeQuery()) {
+            if (!resultSet.next()) {
+                connection.commit();
+                return null;
+            }
+
+            password = resultSet.getString(1);
+            balance = resultSet.getDouble(2);
+        }
+
+        Map<String, Double> investments = new HashMap<>();
+        Map<String, Double> entryPrices = new HashMap<>();
+        Map<String, Position> positions = new HashMap<>();
+
+        selectPositions.setString(1, username);
+
+        try (ResultSet resultSet = selectPositions.executeQuery()) {
+            while (resultSet.next()) {
+                Position position = new Position(resultSet.getDouble(2), resultSet.getDouble(3));
+
+                investments.put(resultSet.getString(1), position.quantity());
+                entryPrices.put(resultSet.getString(1), position.entryPrice());
+                positions.put(resultSet.getString(1), position);
+            }
+        }
+
+        connection.commit();
+
+        CryptoUser user = new DefaultCryptoUser(username, password,
+            new DefaultCryptoWallet(balance, investments, entryPrices));
+
+        users.put(username, user);
+        storedWallets.put(username, new StoredWallet(balance, positions));
+
+        return user;
+    }
+
+    private synchronized List<String> readAll() throws SQLException {
+        Map<String, Map<String, Double>> investments = new HashMap<>();
+        Map<String, Map<String, Double>> entryPrices = new HashMap<>();
+        List<String> lines = new ArrayList<>();
+
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery(SELECT_ALL_POSITIONS)) {
+                while (resultSet.next()) {
+                    String username = resultSet.getString(1);
+
+                    investments.computeIfAbsent(username, ignored -> new HashMap<>())
+                        .put(resultSet.getString(2), resultSet.getDouble(3));
+                    entryPrices.computeIfAbsent(username, ignored -> new HashMap<>())
+                        .put(resultSet.getString(2), resultSet.getDouble(4));
+                }
+            }
+
+            try (ResultSet resultSet = statement.executeQuery(SELECT_ALL_USERS)) {
+                while (resultSet.next()) {
+                    String username = resultSet.getString(1);
+                    CryptoWallet wallet = new DefaultCryptoWallet(resultSet.getDouble(3),
+                        investments.getOrDefault(username, new HashMap<>()),
+                        entryPrices.getOrDefault(username, new HashMap<>()));
+
+                    lines.add(new DefaultCryptoUser(username, resultSet.getString(2), wallet).toString());
+                }
+            }
+        } finally {
+            connection.commit();
+        }
+
+        return lines;
+    }
+
+    private void upsertPositions(String username, StoredWallet previous, StoredWallet current) throws SQLException {
+        for (Map.Entry<String, Position> position : current.positions().entrySet()) {
+            Position stored = previous.positions().get(position.getKey());
+
+            if (stored == null) {
+                addPosition(insertPosition, username, position.getKey(), position.getValue());
+            } else if (!stored.equals(position.getValue())) {
+                updatePosition.setDouble(1, position.getValue().quantity());
+                updatePosition.setDouble(2, position.getValue().entryPrice());
+                updatePosition.setString(3, username);
+                updatePosition.setString(4, position.getKey());
+                updatePosition.addBatch();
+            }
+        }
+
+        executeBatch(updatePosition);
+        executeBatch(insertPosition);
+    }
+
+    private void deletePositions(String username, StoredWallet previous, StoredWallet current) throws SQLException {
+        for (String assetId : previous.positions().keySet()) {
+            if (!current.positions().containsKey(assetId)) {
+                deletePosition.setString(1, username);
+                deletePosition.setString(2, assetId);
+                deletePosition.addBatch();
+            }
+        }
+
+        executeBatch(deletePosition);
+    }
+
+    private void executeBatch(PreparedStatement statement) throws SQLException {
+        for (int count : statement.executeBatch()) {
+            if (count != 0) {
+                writtenPositionCount++;
+            }
+        }
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException exception) {
+            //
+        }
+    }
+
+    private static void addPosition(PreparedStatement statement, String username, String assetId, Position position)
+        throws SQLException {
+        statement.setString(1, username);
+        statement.setString(2, assetId);
+        statement.setDouble(3, position.quantity());
+        statement.setDouble(4, position.entryPrice());
+        statement.addBatch();
+    }
+
+    private record Position(double quantity, double entryPrice) {
+    }
+
+    private record StoredWallet(double balance, Map<String, Position> positions) {
+        private static StoredWallet of(CryptoWallet wallet) {
+            Map<String, Position> positions = new HashMap<>();
+
+            for (String assetId : wallet.getInvestments()) {
+                positions.put(assetId, new Position(wallet.getQuantity(assetId), wallet.getEntryPrice(assetId)));
+            }
+
+            return new StoredWallet(wallet.getBalance(), positions);
+        }
+    }
+}
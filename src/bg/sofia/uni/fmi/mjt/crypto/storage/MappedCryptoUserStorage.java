@@ -0,0 +1,526 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import bg.sofia.uni.fmi.mjt.crypto.exception.UserAlreadyExistsException;
+import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
+import bg.sofia.uni.fmi.mjt.crypto.user.DefaultCryptoUser;
+import bg.sofia.uni.fmi.mjt.crypto.wallet.CryptoWallet;
+import bg.sofia.uni.fmi.mjt.crypto.wallet.WalletCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class MappedCryptoUserStorage implements CryptoUserStorage, Closeable {
+    private static final String OVERFLOW_SUFFIX = ".overflow";
+    private static final String DELIMITER_FIELD = ";";
+
+    private static final int MAGIC = 0x43555352;
+    private static final int VERSION = 3;
+    private static final int LEGACY_TEXT_VERSION = 1;
+    private static final int LEGACY_BINARY_VERSION = 2;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_USER_COUNT = 8;
+    private static final int HEADER_OVERFLOW_END = 16;
+
+    private static final int SLOT_SIZE = 256;
+    private static final int SLOT_HASH = 0;
+    private static final int SLOT_USERNAME = 4;
+    private static final int SLOT_PASSWORD = 68;
+    private static final int SLOT_BALANCE = 200;
+    private static final int SLOT_OVERFLOW_OFFSET = 208;
+    private static final int SLOT_OVERFLOW_LENGTH = 216;
+    private static final int SLOT_OVERFLOW_CAPACITY = 220;
+    private static final int SLOT_FORMAT = 224;
+
+    private static final byte FORMAT_PAIRED = 1;
+
+    private static final int MAX_USERNAME_LENGTH = SLOT_PASSWORD - SLOT_USERNAME - 1;
+    private static final int MAX_PASSWORD_LENGTH = SLOT_BALANCE - SLOT_PASSWORD - 8;
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+    private static final int MIN_OVERFLOW_CAPACITY = 64;
+    private static final long DEFAULT_MAX_RESIDENT_BYTES = 64L * 1024 * 1024;
+
+    private static final int RESIDENT_USER_BYTES = 512;
+    private static final int RESIDENT_WALLET_BYTES_PER_BYTE = 16;
+    private static final int LOCK_STRIPES = 256;
+
+    private final FileChannel slotChannel;
+    private final FileChannel overflowChannel;
+    private final Map<String, ResidentUser> users;
+    private final long maxResidentBytes;
+    private final ReadWriteLock indexLock;
+    private final Object[] slotLocks;
+    private final Object[] writeLocks;
+    private final Object overflowLock;
+
+    private final MappedSegments slots;
+    private final MappedSegments overflow;
+    private int[] index;
+    private int userCount;
+    private long overflowEnd;
+    private long residentBytes;
+
+    public MappedCryptoUserStorage(String filePath) {
+        this(filePath, DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_RESIDENT_BYTES);
+    }
+
+    public MappedCryptoUserStorage(String filePath, long maxResidentBytes) {
+        this(filePath, DEFAULT_INITIAL_CAPACITY, maxResidentBytes);
+    }
+
+    MappedCryptoUserStorage(String filePath, int initialCapacity) {
+        this(filePath, initialCapacity, DEFAULT_MAX_RESIDENT_BYTES);
+    }
+
+    MappedCryptoUserStorage(String filePath, int initialCapacity, long maxResidentBytes) {
+        this(filePath, initialCapacity, maxResidentBytes, MappedSegments.DEFAULT_SEGMENT_SIZE);
+    }
+
+    MappedCryptoUserStorage(String filePath, int initialCapacity, long maxResidentBytes, int segmentSize) {
+        this.users = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxResidentBytes = maxResidentBytes;
+        this.indexLock = new ReentrantReadWriteLock();
+        this.slotLocks = new Object[LOCK_STRIPES];
+        this.writeLocks = new Object[LOCK_STRIPES];
+        this.overflowLock = new Object();
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            slotLocks[i] = new Object();
+            writeLocks[i] = new Object();
+        }
+
+        try {
+            this.slotChannel = open(Path.of(filePath));
+            this.overflowChannel = open(Path.of(filePath + OVERFLOW_SUFFIX));
+
+            boolean created = slotChannel.size() == 0;
+
+            this.slots = new MappedSegments(slotChannel, segmentSize, slotOffset(Math.max(initialCapacity, 1)));
+            this.overflow = new MappedSegments(overflowChannel, segmentSize,
+                (long) Math.max(initialCapacity, 1) * MIN_OVERFLOW_CAPACITY);
+
+            load(created);
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not retrieve users", exception);
+        }
+    }
+
+    @Override
+    public CryptoUser get(String username) {
+        if (username == null) {
+            return null;
+        }
+
+        CryptoUser resident = resident(username);
+
+        if (resident != null) {
+            return resident;
+        }
+
+        indexLock.readLock().lock();
+
+        try {
+            int slot = find(username);
+
+            if (slot < 0) {
+                return null;
+            }
+
+            CryptoUser user;
+            int walletLength;
+
+            synchronized (slotLock(slot)) {
+                user = read(slot);
+                walletLength = slots.getInt(slotOffset(slot) + SLOT_OVERFLOW_LENGTH);
+            }
+
+            return cacheIfAbsent(user, walletLength);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(CryptoUser user) throws UserAlreadyExistsException {
+        byte[] username = encode(user.getUsername(), MAX_USERNAME_LENGTH, "Username is too long");
+        byte[] password = encode(user.getPassword(), MAX_PASSWORD_LENGTH, "Password is too long");
+        int walletLength;
+
+        indexLock.writeLock().lock();
+
+        try {
+            if (find(user.getUsername()) >= 0) {
+                throw new UserAlreadyExistsException("Username is taken");
+            }
+
+            slots.ensureCapacity(slotOffset(userCount + 1));
+
+            int slot = userCount;
+            long offset = slotOffset(slot);
+
+            slots.putInt(offset + SLOT_HASH, user.getUsername().hashCode());
+            putBytes(offset + SLOT_USERNAME, username);
+            putBytes(offset + SLOT_PASSWORD, password);
+            slots.putInt(offset + SLOT_OVERFLOW_CAPACITY, 0);
+            slots.put(offset + SLOT_FORMAT, (byte) 0);
+            walletLength = writeWallet(slot, user.getWallet());
+
+            slots.putInt(HEADER_USER_COUNT, ++userCount);
+            slots.force(HEADER_USER_COUNT, Integer.BYTES);
+
+            insert(slot, user.getUsername().hashCode());
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not persist users", exception);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+
+        cache(user, walletLength);
+    }
+
+    @Override
+    public void update(CryptoUser user) {
+        int walletLength;
+
+        indexLock.readLock().lock();
+
+        try {
+            int slot = find(user.getUsername());
+
+            if (slot < 0) {
+                return;
+            }
+
+            synchronized (writeLock(slot)) {
+                walletLength = writeWallet(slot, user.getWallet());
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not persist users", exception);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        cache(user, walletLength);
+    }
+
+    @Override
+    public CompletableFuture<Void> backup(String backupPath) {
+        List<String> lines = new ArrayList<>();
+
+        indexLock.readLock().lock();
+
+        try {
+            for (int slot = 0; slot < userCount; slot++) {
+                synchronized (slotLock(slot)) {
+                    lines.add(read(slot).toString());
+                }
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+
+        try {
+            DefaultCryptoUserStorage.writeBackup(lines, backupPath);
+        } catch (RuntimeException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public int size() {
+        indexLock.readLock().lock();
+
+        try {
+            return userCount;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    int getResidentCount() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    long getResidentBytes() {
+        synchronized (users) {
+            return residentBytes;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        indexLock.writeLock().lock();
+
+        try {
+            slots.force();
+            overflow.force();
+            slotChannel.close();
+            overflowChannel.close();
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private void load(boolean created) throws IOException {
+        if (created) {
+            slots.putInt(HEADER_MAGIC, MAGIC);
+            slots.putInt(HEADER_VERSION, VERSION);
+            slots.putInt(HEADER_USER_COUNT, 0);
+            slots.putLong(HEADER_OVERFLOW_END, 0);
+            slots.force(0, HEADER_SIZE);
+        } else if (slots.getInt(HEADER_MAGIC) != MAGIC || slots.getInt(HEADER_VERSION) < LEGACY_TEXT_VERSION
+            || slots.getInt(HEADER_VERSION) > VERSION) {
+            throw new IOException("Unsupported user storage format");
+        }
+
+        userCount = slots.getInt(HEADER_USER_COUNT);
+        overflowEnd = slots.getLong(HEADER_OVERFLOW_END);
+        index = new int[indexCapacity(userCount + 1)];
+
+        for (int slot = 0; slot < userCount; slot++) {
+            insert(slot, slots.getInt(slotOffset(slot) + SLOT_HASH));
+        }
+
+        if (slots.getInt(HEADER_VERSION) != VERSION) {
+            migrateLegacyWallets(slots.getInt(HEADER_VERSION));
+        }
+    }
+
+    private void migrateLegacyWallets(int version) throws IOException {
+        for (int slot = 0; slot < userCount; slot++) {
+            long offset = slotOffset(slot);
+
+            if (slots.get(offset + SLOT_FORMAT) != FORMAT_PAIRED) {
+                writeWallet(slot, readLegacyWallet(offset, version));
+            }
+        }
+
+        slots.putInt(HEADER_VERSION, VERSION);
+        slots.force(HEADER_VERSION, Integer.BYTES);
+    }
+
+    private CryptoWallet readLegacyWallet(long offset, int version) {
+        long overflowOffset = slots.getLong(offset + SLOT_OVERFLOW_OFFSET);
+        int length = slots.getInt(offset + SLOT_OVERFLOW_LENGTH);
+
+        if (version == LEGACY_BINARY_VERSION) {
+            return WalletCodec.decode(overflow.slice(overflowOffset, length));
+        }
+
+        String maps = getString(overflow, overflowOffset, length);
+
+        return WalletCodec.decodeLegacy(slots.getDouble(offset + SLOT_BALANCE) + DELIMITER_FIELD + maps);
+    }
+
+    private CryptoUser read(int slot) {
+        long offset = slotOffset(slot);
+        CryptoWallet wallet = WalletCodec.decode(overflow.slice(slots.getLong(offset + SLOT_OVERFLOW_OFFSET),
+            slots.getInt(offset + SLOT_OVERFLOW_LENGTH)));
+
+        return new DefaultCryptoUser(getString(offset + SLOT_USERNAME), getString(offset + SLOT_PASSWORD), wallet);
+    }
+
+    private CryptoUser resident(String username) {
+        synchronized (users) {
+            ResidentUser resident = users.get(username);
+
+            return resident == null ? null : resident.user();
+        }
+    }
+
+    private CryptoUser cacheIfAbsent(CryptoUser user, int walletLength) {
+        synchronized (users) {
+            ResidentUser resident = users.get(user.getUsername());
+
+            if (resident != null) {
+                return resident.user();
+            }
+
+            cache(user, walletLength);
+
+            return user;
+        }
+    }
+
+    private void cache(CryptoUser user, int walletLength) {
+        int size = RESIDENT_USER_BYTES + walletLength * RESIDENT_WALLET_BYTES_PER_BYTE;
+
+        synchronized (users) {
+            ResidentUser previous = users.put(user.getUsername(), new ResidentUser(user, size));
+
+            residentBytes += size - (previous == null ? 0 : previous.size());
+
+            Iterator<ResidentUser> eldest = users.values().iterator();
+
+            while (residentBytes > maxResidentBytes && users.size() > 1) {
+                residentBytes -= eldest.next().size();
+                eldest.remove();
+            }
+        }
+    }
+
+    private int writeWallet(int slot, CryptoWallet wallet) throws IOException {
+        CryptoWallet snapshot = wallet.snapshot();
+        byte[] maps = WalletCodec.encode(snapshot);
+
+        long offset = slotOffset(slot);
+        long overflowOffset;
+        int overflowCapacity = slots.getInt(offset + SLOT_OVERFLOW_CAPACITY);
+
+        if (slots.get(offset + SLOT_FORMAT) == FORMAT_PAIRED && maps.length <= overflowCapacity) {
+            overflowOffset = slots.getLong(offset + SLOT_OVERFLOW_OFFSET) ^ overflowCapacity;
+        } else {
+            overflowCapacity = Math.max(MIN_OVERFLOW_CAPACITY, Integer.highestOneBit(maps.length) << 1);
+            overflowOffset = allocateOverflow(overflowCapacity * 2);
+        }
+
+        overflow.put(overflowOffset, maps);
+        overflow.force(overflowOffset, maps.length);
+
+        synchronized (slotLock(slot)) {
+            slots.putDouble(offset + SLOT_BALANCE, snapshot.getBalance());
+            slots.putLong(offset + SLOT_OVERFLOW_OFFSET, overflowOffset);
+            slots.putInt(offset + SLOT_OVERFLOW_LENGTH, maps.length);
+            slots.putInt(offset + SLOT_OVERFLOW_CAPACITY, overflowCapacity);
+            slots.put(offset + SLOT_FORMAT, FORMAT_PAIRED);
+        }
+
+        slots.force(offset, SLOT_SIZE);
+
+        return maps.length;
+    }
+
+    private long allocateOverflow(int capacity) throws IOException {
+        synchronized (overflowLock) {
+            long offset = (overflowEnd + capacity - 1) & -capacity;
+            overflow.ensureCapacity(offset + capacity);
+
+            overflowEnd = offset + capacity;
+
+            slots.putLong(HEADER_OVERFLOW_END, overflowEnd);
+            slots.force(HEADER_OVERFLOW_END, Long.BYTES);
+
+            return offset;
+        }
+    }
+
+    private int find(String username) {
+        int hash = username.hashCode();
+        int mask = index.length - 1;
+
+        for (int i = mix(hash) & mask; index[i] != 0; i = (i + 1) & mask) {
+            int slot = index[i] - 1;
+            long offset = slotOffset(slot);
+
+            if (slots.getInt(offset + SLOT_HASH) == hash && username.equals(getString(offset + SLOT_USERNAME))) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private void insert(int slot, int hash) {
+        if ((userCount + 1) * 2L > index.length) {
+            rehash();
+        }
+
+        int mask = index.length - 1;
+        int i = mix(hash) & mask;
+
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+
+        index[i] = slot + 1;
+    }
+
+    private void rehash() {
+        int[] previous = index;
+        index = new int[previous.length * 2];
+        int mask = index.length - 1;
+
+        for (int entry : previous) {
+            if (entry != 0) {
+                int i = mix(slots.getInt(slotOffset(entry - 1) + SLOT_HASH)) & mask;
+
+                while (index[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+
+                index[i] = entry;
+            }
+        }
+    }
+
+    private Object slotLock(int slot) {
+        return slotLocks[slot & (LOCK_STRIPES - 1)];
+    }
+
+    private Object writeLock(int slot) {
+        return writeLocks[slot & (LOCK_STRIPES - 1)];
+    }
+
+    private void putBytes(long offset, byte[] bytes) {
+        slots.put(offset, (byte) bytes.length);
+        slots.put(offset + 1, bytes);
+    }
+
+    private String getString(long offset) {
+        return getString(slots, offset + 1, Byte.toUnsignedInt(slots.get(offset)));
+    }
+
+    private static String getString(MappedSegments buffer, long offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(String value, int maxLength, String message) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        if (bytes.length > maxLength) {
+            throw new IllegalArgumentException(message);
+        }
+
+        return bytes;
+    }
+
+    static long slotOffset(int slot) {
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    private static int indexCapacity(int count) {
+        return Integer.highestOneBit(Math.max(count, 8) * 4 - 1);
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private record ResidentUser(CryptoUser user, int size) {
+    }
+}
@@ -0,0 +1,180 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+class MappedSegments {
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final int segmentShift;
+
+    private volatile MappedByteBuffer[] segments;
+    private volatile long capacity;
+
+    MappedSegments(FileChannel channel, int segmentSize, long initialCapacity) throws IOException {
+        if (Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException("Segment size must be a power of two");
+        }
+
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        this.segments = new MappedByteBuffer[0];
+
+        ensureCapacity(Math.max(channel.size(), initialCapacity));
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    int segmentCount() {
+        return segments.length;
+    }
+
+    synchronized void ensureCapacity(long size) throws IOException {
+        if (size <= capacity) {
+            return;
+        }
+
+        long target = Math.max(size, capacity * 2);
+        MappedByteBuffer[] grown = Arrays.copyOf(segments, segmentIndex(target - 1, segmentShift) + 1);
+        int last = segments.length - 1;
+        long mapped = capacity;
+
+        if (last >= 0 && segments[last].capacity() < segmentSize) {
+            segments[last].force();
+            mapped = (long) last * segmentSize;
+        }
+
+        while (mapped < target) {
+            long length = Math.min(segmentSize, target - mapped);
+            grown[segmentIndex(mapped, segmentShift)] = channel.map(FileChannel.MapMode.READ_WRITE, mapped, length);
+            mapped += length;
+        }
+
+        segments = grown;
+        capacity = mapped;
+    }
+
+    byte get(long position) {
+        return segment(position).get(offset(position));
+    }
+
+    void put(long position, byte value) {
+        segment(position).put(offset(position), value);
+    }
+
+    int getInt(long position) {
+        return fits(position, Integer.BYTES)
+            ? segment(position).getInt(offset(position))
+            : copy(position, Integer.BYTES).getInt();
+    }
+
+    void putInt(long position, int value) {
+        if (fits(position, Integer.BYTES)) {
+            segment(position).putInt(offset(position), value);
+        } else {
+            put(position, ByteBuffer.allocate(Integer.BYTES).putInt(value).array());
+        }
+    }
+
+    long getLong(long position) {
+        return fits(position, Long.BYTES)
+            ? segment(position).getLong(offset(position))
+            : copy(position, Long.BYTES).getLong();
+    }
+
+    void putLong(long position, long value) {
+        if (fits(position, Long.BYTES)) {
+            segment(position).putLong(offset(position), value);
+        } else {
+            put(position, ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+        }
+    }
+
+    double getDouble(long position) {
+        return Double.longBitsToDouble(getLong(position));
+    }
+
+    void putDouble(long position, double value) {
+        putLong(position, Double.doubleToRawLongBits(value));
+    }
+
+    void get(long position, byte[] bytes) {
+        int copied = 0;
+
+        while (copied < bytes.length) {
+            long current = position + copied;
+            int length = Math.min(bytes.length - copied, segmentSize - offset(current));
+
+            segment(current).get(offset(current), bytes, copied, length);
+            copied += length;
+        }
+    }
+
+    void put(long position, byte[] bytes) {
+        int copied = 0;
+
+        while (copied < bytes.length) {
+            long current = position + copied;
+            int length = Math.min(bytes.length - copied, segmentSize - offset(current));
+
+            segment(current).put(offset(current), bytes, copied, length);
+            copied += length;
+        }
+    }
+
+    ByteBuffer slice(long position, int length) {
+        return fits(position, length) ? segment(position).slice(offset(position), length) : copy(position, length);
+    }
+
+    void force(long position, long length) {
+        long end = position + length;
+
+        while (position < end) {
+            int forced = (int) Math.min(end - position, segmentSize - offset(position));
+
+            segment(position).force(offset(position), forced);
+            position += forced;
+        }
+    }
+
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    static int segmentIndex(long position, int segmentShift) {
+        return Math.toIntExact(position >>> segmentShift);
+    }
+
+    static int segmentOffset(long position, int segmentSize) {
+        return (int) (position & (segmentSize - 1));
+    }
+
+    private MappedByteBuffer segment(long position) {
+        return segments[segmentIndex(position, segmentShift)];
+    }
+
+    private int offset(long position) {
+        return segmentOffset(position, segmentSize);
+    }
+
+    private boolean fits(long position, int length) {
+        return offset(position) + length <= segmentSize;
+    }
+
+    private ByteBuffer copy(long position, int length) {
+        byte[] bytes = new byte[length];
+        get(position, bytes);
+
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,77 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import bg.sofia.uni.fmi.mjt.crypto.dto.Asset;
+import bg.sofia.uni.fmi.mjt.crypto.exception.UnknownAssetException;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class PriceSnapshot {
+    private final long epoch;
+    private final Asset[] assets;
+    private final String[] ids;
+    private final double[] prices;
+
+    public PriceSnapshot(long epoch, Collection<Asset> assets) {
+        this.epoch = epoch;
+        this.assets = assets.toArray(Asset[]::new);
+        Arrays.sort(this.assets, Comparator.comparing(Asset::getId));
+
+        this.ids = new String[this.assets.length];
+        this.prices = new double[this.assets.length];
+
+        for (int i = 0; i < this.assets.length; i++) {
+            ids[i] = this.assets[i].getId();
+            prices[i] = this.assets[i].getPrice();
+        }
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int size() {
+        return assets.length;
+    }
+
+    public boolean contains(String id) {
+        return indexOf(id) >= 0;
+    }
+
+    public Asset getAsset(String id) throws UnknownAssetException {
+        int index = indexOf(id);
+
+        if (index < 0) {
+            throw new UnknownAssetException("Unknown asset: " + id);
+        }
+
+        return assets[index];
+    }
+
+    public List<Asset> getAssets() {
+        return List.of(assets);
+    }
+
+    public double getPrice(String id) {
+        int index = indexOf(id);
+        return index >= 0 ? prices[index] : 0.0;
+    }
+
+    public Map<String, Double> getPrices(List<String> ids) {
+        Map<String, Double> result = new HashMap<>();
+
+        for (String id : ids) {
+            result.put(id, getPrice(id));
+        }
+
+        return result;
+    }
+
+    private int indexOf(String id) {
+        return id == null ? -1 : Arrays.binarySearch(ids, id);
+    }
+}
@@ -0,0 +1,250 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import bg.sofia.uni.fmi.mjt.crypto.exception.UserAlreadyExistsException;
+import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class ShardedCryptoUserStorage implements CryptoUserStorage, Closeable {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final String DELIMITER_FIELD = ";";
+
+    private static final String SHARD_COUNT_SUFFIX = ".shards";
+    private static final String MIGRATED_SUFFIX = ".migrated";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int DEFAULT_SHARD_COUNT = 16;
+
+    private final DefaultCryptoUserStorage[] shards;
+
+    public ShardedCryptoUserStorage(String filePath) {
+        this(filePath, DEFAULT_SHARD_COUNT);
+    }
+
+    public ShardedCryptoUserStorage(String filePath, int shardCount) {
+        try {
+            if (Files.exists(Path.of(filePath + SHARD_COUNT_SUFFIX))) {
+                checkShardCount(filePath, shardCount);
+            } else {
+                migrate(filePath, shardCount);
+                writeShardCount(filePath, shardCount);
+                retireLegacy(filePath);
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not retrieve users", exception);
+        }
+
+        this.shards = openShards(filePath, shardCount);
+    }
+
+    @Override
+    public CryptoUser get(String username) {
+        return username == null ? null : shard(username).get(username);
+    }
+
+    @Override
+    public void add(CryptoUser user) throws UserAlreadyExistsException {
+        shard(user.getUsername()).add(user);
+    }
+
+    @Override
+    public void update(CryptoUser user) {
+        shard(user.getUsername()).update(user);
+    }
+
+    @Override
+    public CompletableFuture<Void> addAsync(CryptoUser user) throws UserAlreadyExistsException {
+        return shard(user.getUsername()).addAsync(user);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateAsync(CryptoUser user) {
+        return shard(user.getUsername()).updateAsync(user);
+    }
+
+    @Override
+    public CompletableFuture<Void> backup(String backupPath) {
+        List<String> lines = new ArrayList<>();
+
+        for (DefaultCryptoUserStorage shard : shards) {
+            lines.addAll(shard.capture());
+        }
+
+        try {
+            DefaultCryptoUserStorage.writeBackup(lines, backupPath);
+        } catch (RuntimeException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public void compact() {
+        for (DefaultCryptoUserStorage shard : shards) {
+            shard.compact();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DefaultCryptoUserStorage shard : shards) {
+            shard.close();
+        }
+    }
+
+    private DefaultCryptoUserStorage shard(String username) {
+        return shards[shardIndex(username, shards.length)];
+    }
+
+    private static int shardIndex(String username, int shardCount) {
+        return Math.floorMod(username.hashCode(), shardCount);
+    }
+
+    private static String shardPath(String filePath, int shard) {
+        return filePath + "." + shard;
+    }
+
+    private static DefaultCryptoUserStorage[] openShards(String filePath, int shardCount) {
+        DefaultCryptoUserStorage[] shards = new DefaultCryptoUserStorage[shardCount];
+        ForkJoinPool pool = new ForkJoinPool(Math.min(shardCount, Runtime.getRuntime().availableProcessors()));
+
+        try {
+            pool.submit(() -> IntStream.range(0, shardCount)
+                    .parallel()
+                    .forEach(shard -> shards[shard] = new DefaultCryptoUserStorage(shardPath(filePath, shard))))
+                .join();
+        } catch (RuntimeException exception) {
+            closeOpened(shards, exception);
+            throw exception;
+        } finally {
+            pool.shutdown();
+        }
+
+        return shards;
+    }
+
+    private static void closeOpened(DefaultCryptoUserStorage[] shards, RuntimeException failure) {
+        for (DefaultCryptoUserStorage shard : shards) {
+            if (shard != null) {
+                try {
+                    shard.close();
+                } catch (IOException exception) {
+                    failure.addSuppressed(exception);
+                }
+            }
+        }
+    }
+
+    private static void checkShardCount(String filePath, int shardCount) throws IOException {
+        int existingShardCount = Integer.parseInt(Files.readString(Path.of(filePath + SHARD_COUNT_SUFFIX)).trim());
+
+        if (existingShardCount != shardCount) {
+            throw new IOException("User database has " + existingShardCount + " shards, not " + shardCount);
+        }
+    }
+
+    private static void migrate(String filePath, int shardCount) throws IOException {
+        Path legacyPath = Path.of(filePath);
+
+        if (!Files.exists(legacyPath) && !Files.exists(Path.of(filePath + DefaultCryptoUserStorage.LOG_SUFFIX))
+            && !Files.exists(Path.of(filePath + DefaultCryptoUserStorage.ROTATED_LOG_SUFFIX))) {
+            return;
+        }
+
+        try (DefaultCryptoUserStorage legacy = new DefaultCryptoUserStorage(filePath)) {
+            legacy.compact();
+        }
+
+        try {
+            split(legacyPath, filePath, shardCount);
+        } catch (IOException exception) {
+            for (int shard = 0; shard < shardCount; shard++) {
+                Files.deleteIfExists(temporaryShardPath(filePath, shard));
+            }
+
+            throw exception;
+        }
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            force(temporaryShardPath(filePath, shard));
+            Files.move(temporaryShardPath(filePath, shard), Path.of(shardPath(filePath, shard)),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static void split(Path legacyPath, String filePath, int shardCount) throws IOException {
+        BufferedWriter[] writers = new BufferedWriter[shardCount];
+
+        try (BufferedReader reader = Files.newBufferedReader(legacyPath, StandardCharsets.UTF_8)) {
+            for (int shard = 0; shard < shardCount; shard++) {
+                writers[shard] = Files.newBufferedWriter(temporaryShardPath(filePath, shard), StandardCharsets.UTF_8);
+            }
+
+            String line;
+            int lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int delimiter = line.indexOf(DELIMITER_FIELD);
+
+                if (delimiter <= 0) {
+                    throw new IOException("Malformed user record at line " + lineNumber + " of " + legacyPath);
+                }
+
+                writers[shardIndex(line.substring(0, delimiter), shardCount)].write(line + LINE_SEPARATOR);
+            }
+        } finally {
+            for (BufferedWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+    }
+
+    private static void writeShardCount(String filePath, int shardCount) throws IOException {
+        Path shardCountPath = Path.of(filePath + SHARD_COUNT_SUFFIX);
+        Path temporaryPath = Path.of(shardCountPath + TEMPORARY_SUFFIX);
+
+        Files.writeString(temporaryPath, String.valueOf(shardCount));
+        force(temporaryPath);
+        Files.move(temporaryPath, shardCountPath, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void retireLegacy(String filePath) throws IOException {
+        Path legacyPath = Path.of(filePath);
+
+        if (Files.exists(legacyPath)) {
+            Files.deleteIfExists(Path.of(filePath + DefaultCryptoUserStorage.LOG_SUFFIX));
+            Files.move(legacyPath, Path.of(filePath + MIGRATED_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Path temporaryShardPath(String filePath, int shard) {
+        return Path.of(shardPath(filePath, shard) + TEMPORARY_SUFFIX);
+    }
+
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+class UserLogWriter implements Closeable {
+    private static final int MAX_BATCH_SIZE = 4096;
+    private static final byte RECORD_END = '\n';
+    private static final byte FIELD_DELIMITER = ' ';
+    private static final String RECORD_HEADER_FORMAT = "%d %x ";
+    private static final Entry CLOSE = new Entry(null, null, null);
+
+    private final Path path;
+    private final long batchWindowNanos;
+    private final BlockingQueue<Entry> queue;
+    private final Thread thread;
+    private final AtomicLong forceCount;
+    private final AtomicInteger largestBatchSize;
+
+    private FileChannel channel;
+    private volatile boolean closed;
+
+    UserLogWriter(Path path, long batchWindowNanos) throws IOException {
+        this.path = path;
+        this.batchWindowNanos = batchWindowNanos;
+        this.queue = new LinkedBlockingQueue<>();
+        this.forceCount = new AtomicLong();
+        this.largestBatchSize = new AtomicInteger();
+        this.channel = open(path);
+        this.thread = new Thread(this::run, "user-storage-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    CompletableFuture<Void> append(String record) {
+        return submit(encode(record), null);
+    }
+
+    CompletableFuture<Void> rotate(Path rotatedPath) {
+        return submit(null, rotatedPath);
+    }
+
+    long getForceCount() {
+        return forceCount.get();
+    }
+
+    int getLargestBatchSize() {
+        return largestBatchSize.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        queue.add(CLOSE);
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        channel.close();
+    }
+
+    private CompletableFuture<Void> submit(ByteBuffer record, Path rotatedPath) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        if (closed) {
+            done.completeExceptionally(new IOException("User log is closed"));
+        } else {
+            queue.add(new Entry(record, rotatedPath, done));
+        }
+
+        return done;
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>();
+
+        try {
+            while (true) {
+                collect(batch);
+
+                if (!process(batch)) {
+                    return;
+                }
+
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void collect(List<Entry> batch) throws InterruptedException {
+        batch.add(queue.take());
+
+        long deadline = System.nanoTime() + batchWindowNanos;
+        long remaining = batchWindowNanos;
+
+        while (remaining > 0 && batch.size() < MAX_BATCH_SIZE) {
+            Entry entry = queue.poll(remaining, TimeUnit.NANOSECONDS);
+
+            if (entry == null) {
+                break;
+            }
+
+            batch.add(entry);
+            remaining = deadline - System.nanoTime();
+        }
+
+        queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+    }
+
+    private boolean process(List<Entry> batch) {
+        List<Entry> pending = new ArrayList<>(batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+
+            if (entry == CLOSE) {
+                flush(pending);
+                failRemaining(batch.subList(i + 1, batch.size()));
+                return false;
+            }
+
+            if (entry.record() != null) {
+                pending.add(entry);
+                continue;
+            }
+
+            flush(pending);
+            pending.clear();
+            rotate(entry);
+        }
+
+        flush(pending);
+
+        return true;
+    }
+
+    private void flush(List<Entry> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        ByteBuffer[] records = pending.stream()
+            .map(Entry::record)
+            .toArray(ByteBuffer[]::new);
+
+        try {
+            long remaining = pending.stream().mapToLong(entry -> entry.record().remaining()).sum();
+
+            while (remaining > 0) {
+                remaining -= channel.write(records);
+            }
+
+            channel.force(false);
+            forceCount.incrementAndGet();
+            largestBatchSize.accumulateAndGet(pending.size(), Math::max);
+
+            pending.forEach(entry -> entry.done().complete(null));
+        } catch (IOException e) {
+            pending.forEach(entry -> entry.done().completeExceptionally(e));
+        }
+    }
+
+    private void rotate(Entry entry) {
+        try {
+            if (!Files.exists(entry.rotatedPath())) {
+                channel.close();
+                Files.move(path, entry.rotatedPath());
+                channel = open(path);
+            }
+
+            entry.done().complete(null);
+        } catch (IOException e) {
+            entry.done().completeExceptionally(e);
+        }
+    }
+
+    private void failRemaining(List<Entry> remaining) {
+        List<Entry> entries = new ArrayList<>(remaining);
+        queue.drainTo(entries);
+
+        for (Entry entry : entries) {
+            if (entry != CLOSE) {
+                entry.done().completeExceptionally(new IOException("User log is closed"));
+            }
+        }
+    }
+
+    static ByteBuffer encode(String record) {
+        byte[] payload = record.getBytes(StandardCharsets.UTF_8);
+        byte[] header = RECORD_HEADER_FORMAT.formatted(payload.length, checksum(payload, 0, payload.length))
+            .getBytes(StandardCharsets.US_ASCII);
+
+        return ByteBuffer.allocate(header.length + payload.length + 1)
+            .put(header)
+            .put(payload)
+            .put(RECORD_END)
+            .flip();
+    }
+
+    static List<String> recover(Path path) throws IOException {
+        byte[] bytes;
+
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException exception) {
+            return List.of();
+        }
+
+        List<String> records = new ArrayList<>();
+        int position = 0;
+        String record;
+
+        while ((record = decode(bytes, position)) != null) {
+            records.add(record);
+            position = indexOf(bytes, RECORD_END, position) + 1;
+        }
+
+        if (position < bytes.length) {
+            if (hasValidRecordAfter(bytes, position)) {
+                throw new IOException("Corrupt user log record at offset " + position + " in " + path);
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(position);
+                channel.force(true);
+            }
+        }
+
+        return records;
+    }
+
+    private static String decode(byte[] bytes, int from) {
+        int end = indexOf(bytes, RECORD_END, from);
+        int lengthEnd = indexOf(bytes, FIELD_DELIMITER, from);
+        int checksumEnd = lengthEnd < 0 ? -1 : indexOf(bytes, FIELD_DELIMITER, lengthEnd + 1);
+
+        if (end < 0 || checksumEnd < 0 || checksumEnd > end) {
+            return null;
+        }
+
+        try {
+            int length = Integer.parseInt(new String(bytes, from, lengthEnd - from, StandardCharsets.US_ASCII));
+            long checksum = Long.parseLong(
+                new String(bytes, lengthEnd + 1, checksumEnd - lengthEnd - 1, StandardCharsets.US_ASCII), 16);
+            int payloadStart = checksumEnd + 1;
+
+            if (end - payloadStart != length || checksum(bytes, payloadStart, length) != checksum) {
+                return null;
+            }
+
+            return new String(bytes, payloadStart, length, StandardCharsets.UTF_8);
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+    }
+
+    private static boolean hasValidRecordAfter(byte[] bytes, int position) {
+        int end = indexOf(bytes, RECORD_END, position);
+
+        while (end >= 0 && end + 1 < bytes.length) {
+            if (decode(bytes, end + 1) != null) {
+                return true;
+            }
+
+            end = indexOf(bytes, RECORD_END, end + 1);
+        }
+
+        return false;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static long checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+
+        return crc.getValue();
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private record Entry(ByteBuffer record, Path rotatedPath, CompletableFuture<Void> done) {
+    }
+}
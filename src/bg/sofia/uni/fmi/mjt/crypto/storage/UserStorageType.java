@@ -0,0 +1,46 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import java.util.function.Function;
+
+public enum UserStorageType {
+    FILE("file", "user-database.csv", DefaultCryptoUserStorage::new),
+    MAPPED("mapped", "user-database.dat", MappedCryptoUserStorage::new),
+    SHARDED("sharded", "user-database.csv", ShardedCryptoUserStorage::new),
+    JDBC("jdbc", "jdbc:h2:./user-database", JdbcCryptoUserStorage::new);
+
+    private final String name;
+    private final String defaultPath;
+    private final Function<String, CryptoUserStorage> factory;
+
+    UserStorageType(String name, String defaultPath, Function<String, CryptoUserStorage> factory) {
+        this.name = name;
+        this.defaultPath = defaultPath;
+        this.factory = factory;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDefaultPath() {
+        return defaultPath;
+    }
+
+    public CryptoUserStorage create() {
+        return create(defaultPath);
+    }
+
+    public CryptoUserStorage create(String path) {
+        return factory.apply(path);
+    }
+
+    public static UserStorageType of(String name) {
+        for (UserStorageType type : values()) {
+            if (type.name.equals(name)) {
+                return type;
+            }
+        }
+
+        return null;
+    }
+}
@@ -17,6 +17,9 @@ public class DefaultCryptoUser implements CryptoUser {
     private final String password;
     private final CryptoWallet wallet;
 
+    private String serializedWallet;
+    private String serialized;
+
     public DefaultCryptoUser(String username, String password) {
         this(username, password, new DefaultCryptoWallet());
     }
@@ -72,7 +75,14 @@ public class DefaultCryptoUser implements CryptoUser {
     }
 
     @Override
-    public String toString() {
-        return username + DELIMITER_FIELD + password + DELIMITER_FIELD + wallet;
+    public synchronized String toString() {
+        String walletLine = wallet.toString();
+
+        if (serialized == null || walletLine != serializedWallet) {
+            serialized = username + DELIMITER_FIELD + password + DELIMITER_FIELD + walletLine;
+            serializedWallet = walletLine;
+        }
+
+        return serialized;
     }
 }
@@ -12,6 +12,10 @@ public interface CryptoWallet extends Wallet {
 
     List<String> getInvestments();
 
+    double getQuantity(String assetId);
+
+    double getEntryPrice(String assetId);
+
     void buy(String assetId, double moneyToInvest, double assetPrice)
         throws NegativeValueException, InsufficientResourcesException;
 
@@ -20,4 +24,6 @@ public interface CryptoWallet extends Wallet {
     String getSummary(Map<String, Double> assetPrices);
 
     String getTrends(Map<String, Double> assetPrices);
+
+    CryptoWallet snapshot();
 }
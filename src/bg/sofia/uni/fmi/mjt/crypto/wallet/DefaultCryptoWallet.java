@@ -5,7 +5,6 @@ import bg.sofia.uni.fmi.mjt.crypto.exception.InsufficientResourcesException;
 import bg.sofia.uni.fmi.mjt.crypto.exception.NegativeValueException;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +32,7 @@ public class DefaultCryptoWallet implements CryptoWallet {
     private final Map<String, Double> entryPrices;
 
     private double balance;
+    private String serialized;
 
     public DefaultCryptoWallet() {
         this(0.0, new HashMap<>(), new HashMap<>());
@@ -55,14 +55,15 @@ public class DefaultCryptoWallet implements CryptoWallet {
     }
 
     @Override
-    public void deposit(double money) throws NegativeValueException {
+    public synchronized void deposit(double money) throws NegativeValueException {
         assertNonNegative(money);
 
         balance += money;
+        serialized = null;
     }
 
     @Override
-    public void withdraw(double money) throws NegativeValueException, InsufficientResourcesException {
+    public synchronized void withdraw(double money) throws NegativeValueException, InsufficientResourcesException {
         assertNonNegative(money);
 
         if (balance < money) {
@@ -70,27 +71,38 @@ public class DefaultCryptoWallet implements CryptoWallet {
         }
 
         balance -= money;
+        serialized = null;
     }
 
     @Override
-    public double getBalance() {
+    public synchronized double getBalance() {
         return balance;
     }
 
     @Override
-    public double getCryptoBalance(Map<String, Double> assetPrices) {
+    public synchronized double getCryptoBalance(Map<String, Double> assetPrices) {
         return investments.keySet().stream()
             .mapToDouble(key -> investments.get(key) * assetPrices.get(key))
             .sum();
     }
 
     @Override
-    public List<String> getInvestments() {
+    public synchronized List<String> getInvestments() {
         return List.copyOf(investments.keySet());
     }
 
     @Override
-    public void buy(String assetId, double moneyToInvest, double assetPrice)
+    public synchronized double getQuantity(String assetId) {
+        return investments.getOrDefault(assetId, 0.0);
+    }
+
+    @Override
+    public synchronized double getEntryPrice(String assetId) {
+        return entryPrices.getOrDefault(assetId, 0.0);
+    }
+
+    @Override
+    public synchronized void buy(String assetId, double moneyToInvest, double assetPrice)
         throws NegativeValueException, InsufficientResourcesException {
         double quantity = moneyToInvest / assetPrice;
 
@@ -98,10 +110,11 @@ public class DefaultCryptoWallet implements CryptoWallet {
 
         entryPrices.putIfAbsent(assetId, assetPrice);
         investments.merge(assetId, quantity, Double::sum);
+        serialized = null;
     }
 
     @Override
-    public void sell(String assetId, double assetPrice) throws AssetNotFoundException {
+    public synchronized void sell(String assetId, double assetPrice) throws AssetNotFoundException {
         if (!investments.containsKey(assetId)) {
             throw new AssetNotFoundException("Asset not found in wallet");
         }
@@ -110,10 +123,11 @@ public class DefaultCryptoWallet implements CryptoWallet {
 
         investments.remove(assetId);
         entryPrices.remove(assetId);
+        serialized = null;
     }
 
     @Override
-    public String getSummary(Map<String, Double> assetPrices) {
+    public synchronized String getSummary(Map<String, Double> assetPrices) {
         if (investments.isEmpty()) {
             return FORMAT_BALANCE.formatted("Balance", balance)
                 + LINE_SEPARATOR
@@ -138,7 +152,7 @@ public class DefaultCryptoWallet implements CryptoWallet {
     }
 
     @Override
-    public String getTrends(Map<String, Double> assetPrices) {
+    public synchronized String getTrends(Map<String, Double> assetPrices) {
         if (investments.isEmpty()) {
             return "No investments";
         }
@@ -151,8 +165,18 @@ public class DefaultCryptoWallet implements CryptoWallet {
     }
 
     @Override
-    public String toString() {
-        return balance + DELIMITER_FIELD + mapToString(investments) + DELIMITER_FIELD + mapToString(entryPrices);
+    public synchronized CryptoWallet snapshot() {
+        return new DefaultCryptoWallet(balance, new HashMap<>(investments), new HashMap<>(entryPrices));
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (serialized == null) {
+            serialized = balance + DELIMITER_FIELD + mapToString(investments) + DELIMITER_FIELD
+                + mapToString(entryPrices);
+        }
+
+        return serialized;
     }
 
     private static Map.Entry<String, Double> parseEntry(String line) {
@@ -163,12 +187,12 @@ public class DefaultCryptoWallet implements CryptoWallet {
 
     private static Map<String, Double> parseMap(String line) {
         if (line.isBlank()) {
-            return Collections.emptyMap();
+            return new HashMap<>();
         }
 
         return Arrays.stream(line.split(DELIMITER_ENTRIES))
             .map(DefaultCryptoWallet::parseEntry)
-            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> b, HashMap::new));
     }
 
     private String investmentToString(String assetId, double price) {
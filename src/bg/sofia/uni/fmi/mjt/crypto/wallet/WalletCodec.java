@@ -0,0 +1,128 @@
+package bg.sofia.uni.fmi.mjt.crypto.wallet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class WalletCodec {
+    public static final byte VERSION = 1;
+
+    private static final int VARINT_PAYLOAD_BITS = 7;
+    private static final int VARINT_PAYLOAD_MASK = 0x7F;
+    private static final int VARINT_CONTINUATION = 0x80;
+    private static final int MAX_VARINT_BYTES = 5;
+    static final int MAX_INTERNED_ASSET_IDS = 4096;
+
+    private static final Map<String, String> ASSET_IDS = new ConcurrentHashMap<>();
+
+    public static byte[] encode(CryptoWallet wallet) {
+        CryptoWallet snapshot = wallet.snapshot();
+        List<String> assetIds = snapshot.getInvestments();
+        byte[][] encodedIds = new byte[assetIds.size()][];
+        int size = 1 + Double.BYTES + MAX_VARINT_BYTES;
+
+        for (int i = 0; i < encodedIds.length; i++) {
+            encodedIds[i] = assetIds.get(i).getBytes(StandardCharsets.UTF_8);
+            size += MAX_VARINT_BYTES + encodedIds[i].length + 2 * Double.BYTES;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+
+        buffer.put(VERSION);
+        buffer.putDouble(snapshot.getBalance());
+        putVarint(buffer, encodedIds.length);
+
+        for (int i = 0; i < encodedIds.length; i++) {
+            putVarint(buffer, encodedIds[i].length);
+            buffer.put(encodedIds[i]);
+            buffer.putDouble(snapshot.getQuantity(assetIds.get(i)));
+            buffer.putDouble(snapshot.getEntryPrice(assetIds.get(i)));
+        }
+
+        byte[] encoded = new byte[buffer.position()];
+        buffer.flip().get(encoded);
+
+        return encoded;
+    }
+
+    public static CryptoWallet decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    public static CryptoWallet decode(ByteBuffer buffer) {
+        byte version = buffer.get();
+
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported wallet version " + version);
+        }
+
+        double balance = buffer.getDouble();
+        int count = getVarint(buffer);
+
+        Map<String, Double> investments = new HashMap<>();
+        Map<String, Double> entryPrices = new HashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            byte[] encodedId = new byte[getVarint(buffer)];
+            buffer.get(encodedId);
+
+            String assetId = intern(new String(encodedId, StandardCharsets.UTF_8));
+
+            investments.put(assetId, buffer.getDouble());
+            entryPrices.put(assetId, buffer.getDouble());
+        }
+
+        return new DefaultCryptoWallet(balance, investments, entryPrices);
+    }
+
+    public static CryptoWallet decodeLegacy(String line) {
+        return DefaultCryptoWallet.of(line);
+    }
+
+    private static String intern(String assetId) {
+        String interned = ASSET_IDS.get(assetId);
+
+        if (interned != null) {
+            return interned;
+        }
+
+        if (ASSET_IDS.size() >= MAX_INTERNED_ASSET_IDS) {
+            ASSET_IDS.clear();
+        }
+
+        interned = ASSET_IDS.putIfAbsent(assetId, assetId);
+
+        return interned == null ? assetId : interned;
+    }
+
+    static int getInternedCount() {
+        return ASSET_IDS.size();
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~VARINT_PAYLOAD_MASK) != 0) {
+            buffer.put((byte) ((value & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION));
+            value >>>= VARINT_PAYLOAD_BITS;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+
+        for (int shift = 0; shift < MAX_VARINT_BYTES * VARINT_PAYLOAD_BITS; shift += VARINT_PAYLOAD_BITS) {
+            byte b = buffer.get();
+            value |= (b & VARINT_PAYLOAD_MASK) << shift;
+
+            if ((b & VARINT_CONTINUATION) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,187 @@
+package bg.sofia.uni.fmi.mjt.crypto;
+
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+import bg.sofia.uni.fmi.mjt.crypto.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameEncoder;
+import bg.sofia.uni.fmi.mjt.crypto.server.RateLimiter;
+import bg.sofia.uni.fmi.mjt.crypto.storage.AssetStorage;
+import bg.sofia.uni.fmi.mjt.crypto.storage.CryptoUserStorage;
+import bg.sofia.uni.fmi.mjt.crypto.storage.DefaultAssetStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+@ExtendWith(MockitoExtension.class)
+class ServerTest {
+    private static final String HOST = "localhost";
+    private static final int CAPACITY = 1024;
+    private static final int REACTOR_COUNT = 4;
+    private static final int REQUESTS_PER_CLIENT = 3;
+    private static final long BACKUP_INTERVAL_MILLIS = 50;
+
+    @Mock
+    private CommandExecutor executorMock;
+
+    private Server server;
+    private Thread serverThread;
+    private int port;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+
+        server = new Server(HOST, port, CAPACITY, REACTOR_COUNT, executorMock);
+        server.setRateLimiter(RateLimiter.unlimited());
+        serverThread = new Thread(server::start);
+        serverThread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        server.stop();
+        serverThread.join();
+    }
+
+    private SocketChannel connect() throws IOException, InterruptedException {
+        while (true) {
+            try {
+                return SocketChannel.open(new InetSocketAddress(HOST, port));
+            } catch (IOException e) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static String request(SocketChannel client, FrameDecoder decoder, String request) throws IOException {
+        ByteBuffer buffer = FrameEncoder.encode(request);
+
+        while (buffer.hasRemaining()) {
+            client.write(buffer);
+        }
+
+        String response;
+
+        while ((response = decoder.nextFrame()) == null) {
+            if (decoder.readFrom(client) < 0) {
+                throw new EOFException();
+            }
+        }
+
+        return response;
+    }
+
+    @Test
+    void testConnectionsAreSpreadAcrossReactorsAndKeepLoginState() {
+        when(executorMock.execute(any(), any())).thenAnswer(invocation -> {
+            Command command = invocation.getArgument(1);
+            return command.arguments()[0];
+        });
+        when(executorMock.submitEncoded(any(), any())).thenAnswer(invocation -> {
+            String username = invocation.getArgument(0);
+            Command command = invocation.getArgument(1);
+
+            return CompletableFuture.completedFuture(FrameEncoder.encode(command.name() + ":" + username));
+        });
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            List<SocketChannel> clients = new ArrayList<>();
+            List<FrameDecoder> decoders = new ArrayList<>();
+
+            try {
+                for (int i = 0; i < REACTOR_COUNT; i++) {
+                    clients.add(connect());
+                    decoders.add(new FrameDecoder(CAPACITY, FrameDecoder.MAX_RESPONSE_FRAME_LENGTH));
+
+                    assertEquals("Welcome", request(clients.get(i), decoders.get(i), "login user" + i + " password"),
+                        "Login should succeed");
+                }
+
+                int[] expectedCounts = new int[REACTOR_COUNT];
+                Arrays.fill(expectedCounts, 1);
+
+                assertArrayEquals(expectedCounts, server.getConnectionCounts(),
+                    "Connections should be spread evenly across reactors");
+
+                for (int round = 0; round < REQUESTS_PER_CLIENT; round++) {
+                    for (int i = 0; i < REACTOR_COUNT; i++) {
+                        assertEquals("summary:user" + i, request(clients.get(i), decoders.get(i), "summary"),
+                            "Login state should persist across requests on the same connection");
+                    }
+                }
+            } finally {
+                for (SocketChannel client : clients) {
+                    client.close();
+                }
+            }
+        });
+    }
+
+    @Test
+    void testUsersAreBackedUpPeriodically() throws Exception {
+        CryptoUserStorage userStorageMock = mock(CryptoUserStorage.class);
+        when(userStorageMock.backup(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        Server backedUpServer = new Server(HOST, 0, CAPACITY, 1, userStorageMock, mock(AssetStorage.class));
+        backedUpServer.setBackup("backup.csv", BACKUP_INTERVAL_MILLIS);
+
+        Thread backedUpServerThread = new Thread(backedUpServer::start);
+        backedUpServerThread.start();
+
+        try {
+            verify(userStorageMock, timeout(5000).atLeast(2)).backup("backup.csv");
+        } finally {
+            backedUpServer.stop();
+            backedUpServerThread.join();
+        }
+    }
+
+    @Test
+    void testStoragesAreClosedWhenServerStops() throws Exception {
+        CryptoUserStorage userStorageMock = mock(CryptoUserStorage.class,
+            withSettings().extraInterfaces(Closeable.class));
+        DefaultAssetStorage assetStorageMock = mock(DefaultAssetStorage.class);
+
+        Server closingServer = new Server(HOST, 0, CAPACITY, 1, userStorageMock, assetStorageMock);
+        Thread closingServerThread = new Thread(closingServer::start);
+        closingServerThread.start();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while (closingServerThread.isAlive()) {
+                closingServer.stop();
+                closingServerThread.join(10);
+            }
+        });
+
+        verify((Closeable) userStorageMock).close();
+        verify(assetStorageMock).close();
+    }
+}
@@ -5,25 +5,40 @@ import bg.sofia.uni.fmi.mjt.crypto.exception.AssetStorageException;
 import bg.sofia.uni.fmi.mjt.crypto.exception.NegativeValueException;
 import bg.sofia.uni.fmi.mjt.crypto.exception.UserAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.crypto.exception.WalletException;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameEncoder;
 import bg.sofia.uni.fmi.mjt.crypto.storage.AssetStorage;
 import bg.sofia.uni.fmi.mjt.crypto.storage.CryptoUserStorage;
+import bg.sofia.uni.fmi.mjt.crypto.storage.DefaultCryptoUserStorage;
+import bg.sofia.uni.fmi.mjt.crypto.storage.PriceSnapshot;
 import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
 import bg.sofia.uni.fmi.mjt.crypto.user.DefaultCryptoUser;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mindrot.jbcrypt.BCrypt;
+import org.mockito.Answers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.times;
@@ -39,7 +54,7 @@ class CommandExecutorTest {
 
     private CryptoUser user;
 
-    @Mock
+    @Mock(answer = Answers.CALLS_REAL_METHODS)
     private CryptoUserStorage userStorageMock;
 
     @Mock
@@ -171,37 +186,60 @@ class CommandExecutorTest {
         List<Asset> assets = List.of(bitcoin, ethereum);
 
         when(userStorageMock.get(null)).thenReturn(null);
-        when(assetStorageMock.getAssets()).thenReturn(assets);
+        when(assetStorageMock.getPriceSnapshot()).thenReturn(new PriceSnapshot(1, assets));
 
         Command command = new Command(Command.LIST, new String[]{});
         String result = commandExecutor.execute(null, command);
 
         assertEquals("BTC: 19424,470312\nETH: 1039,368296", result, "Results should be equal");
         verify(userStorageMock, times(1)).get(null);
-        verify(assetStorageMock, times(1)).getAssets();
+        verify(assetStorageMock, times(1)).getPriceSnapshot();
+        verify(assetStorageMock, never()).getEpoch();
+        verify(assetStorageMock, never()).getAssets();
+    }
+
+    @Test
+    public void testListIsRenderedOncePerEpoch() throws AssetStorageException {
+        PriceSnapshot snapshot = new PriceSnapshot(1, List.of(bitcoin));
+        when(assetStorageMock.getPriceSnapshot()).thenReturn(snapshot, snapshot, snapshot,
+            new PriceSnapshot(2, List.of(ethereum)));
+
+        Command command = new Command(Command.LIST, new String[]{});
+        String first = commandExecutor.execute(null, command);
+        ByteBuffer firstFrame = commandExecutor.executeEncoded(null, command);
+        ByteBuffer secondFrame = commandExecutor.executeEncoded(null, command);
+        String afterRefresh = commandExecutor.execute(null, command);
+
+        assertEquals("BTC: 19424,470312", first, "Results should be equal");
+        assertEquals(firstFrame, secondFrame, "Cached frames should be equal");
+        assertTrue(firstFrame.isReadOnly(), "Cached frame should be read-only");
+        assertEquals(FrameEncoder.encode(first), firstFrame, "Cached frame should encode the rendered list");
+        assertEquals("ETH: 1039,368296", afterRefresh, "List should be rendered again after a refresh");
+        verify(assetStorageMock, times(4)).getPriceSnapshot();
     }
 
     @Test
     public void testListWhenAssetStorageThrowsException() throws AssetStorageException {
-        when(assetStorageMock.getAssets()).thenThrow(new AssetStorageException("Failed to retrieve asset list"));
+        when(assetStorageMock.getPriceSnapshot())
+            .thenThrow(new AssetStorageException("Failed to retrieve asset list"));
 
         Command command = new Command(Command.LIST, new String[]{});
         String result = commandExecutor.execute(null, command);
 
         assertEquals("Failed to retrieve asset list", result, "Messages should be equal");
-        verify(assetStorageMock, times(1)).getAssets();
+        verify(assetStorageMock, times(1)).getPriceSnapshot();
     }
 
     @Test
     public void testListWhenLoggedOut() throws AssetStorageException {
         List<Asset> assets = List.of(bitcoin, ethereum);
-        when(assetStorageMock.getAssets()).thenReturn(assets);
+        when(assetStorageMock.getPriceSnapshot()).thenReturn(new PriceSnapshot(1, assets));
 
         Command command = new Command(Command.LIST, new String[]{});
         String result = commandExecutor.execute(null, command);
 
         assertEquals("BTC: 19424,470312\nETH: 1039,368296", result, "Results should be equal");
-        verify(assetStorageMock, times(1)).getAssets();
+        verify(assetStorageMock, times(1)).getPriceSnapshot();
     }
 
     @Test
@@ -240,6 +278,17 @@ class CommandExecutorTest {
         verify(userStorageMock, never()).update(any());
     }
 
+    @Test
+    public void testDepositWithParsedAmount() {
+        when(userStorageMock.get(USERNAME)).thenReturn(user);
+
+        Command command = new Command(Command.DEPOSIT, new String[]{""}, 100.0);
+        String result = commandExecutor.execute(USERNAME, command);
+
+        assertEquals("Money successfully deposited. Current balance: 100.0", result, "Messages should be equal");
+        verify(userStorageMock, times(1)).update(user);
+    }
+
     @Test
     public void testDepositWhenLoggedOut() {
         when(userStorageMock.get(null)).thenReturn(null);
@@ -257,7 +306,7 @@ class CommandExecutorTest {
         user.getWallet().deposit(100.0);
 
         when(userStorageMock.get(USERNAME)).thenReturn(user);
-        when(assetStorageMock.getAsset("BTC")).thenReturn(bitcoin);
+        when(assetStorageMock.getPriceSnapshot()).thenReturn(new PriceSnapshot(1, List.of(bitcoin)));
 
         Command command = new Command(Command.BUY, new String[]{"BTC", "100.0"});
         String result = commandExecutor.execute(USERNAME, command);
@@ -265,7 +314,7 @@ class CommandExecutorTest {
         assertEquals("Bitcoin bought. Balance left: 0.0", result, "Messages should be equal");
         verify(userStorageMock, times(1)).get(USERNAME);
         verify(userStorageMock, times(1)).update(user);
-        verify(assetStorageMock, times(1)).getAsset("BTC");
+        verify(assetStorageMock, times(1)).getPriceSnapshot();
     }
 
     @Test
@@ -295,7 +344,7 @@ class CommandExecutorTest {
     @Test
     public void testBuyWithInsufficientBalance() throws AssetStorageException {
         when(userStorageMock.get(USERNAME)).thenReturn(user);
-        when(assetStorageMock.getAsset("BTC")).thenReturn(bitcoin);
+        when(assetStorageMock.getPriceSnapshot()).thenReturn(new PriceSnapshot(1, List.of(bitcoin)));
 
         Command command = new Command(Command.BUY, new String[]{"BTC", "1000.0"});
         String result = commandExecutor.execute(USERNAME, command);
@@ -303,7 +352,7 @@ class CommandExecutorTest {
         assertEquals("Not enough money", result, "Messages should be equal");
         verify(userStorageMock, times(1)).get(USERNAME);
         verify(userStorageMock, never()).update(any());
-        verify(assetStorageMock, times(1)).getAsset("BTC");
+        verify(assetStorageMock, times(1)).getPriceSnapshot();
     }
 
     @Test
@@ -324,7 +373,7 @@ class CommandExecutorTest {
         user.getWallet().buy("BTC", 1000.0, bitcoin.getPrice());
 
         when(userStorageMock.get(USERNAME)).thenReturn(user);
-        when(assetStorageMock.getAsset("BTC")).thenReturn(bitcoin);
+        when(assetStorageMock.getPriceSnapshot()).thenReturn(new PriceSnapshot(1, List.of(bitcoin)));
 
         Command command = new Command(Command.SELL, new String[]{"BTC"});
         String result = commandExecutor.execute(USERNAME, command);
@@ -332,21 +381,21 @@ class CommandExecutorTest {
         assertEquals("Bitcoin sold. Current balance: 1000.0", result, "Messages should be equal");
         verify(userStorageMock, times(1)).get(USERNAME);
         verify(userStorageMock, times(1)).update(user);
-        verify(assetStorageMock, times(1)).getAsset("BTC");
+        verify(assetStorageMock, times(1)).getPriceSnapshot();
     }
 
     @Test
     public void testSellCommandWithInvalidAsset() throws AssetStorageException {
         when(userStorageMock.get(USERNAME)).thenReturn(user);
-        when(assetStorageMock.getAsset("ETH")).thenThrow(new AssetStorageException("Asset not found"));
+        when(assetStorageMock.getPriceSnapshot()).thenReturn(new PriceSnapshot(1, List.of(bitcoin)));
 
         Command command = new Command(Command.SELL, new String[]{"ETH"});
         String result = commandExecutor.execute(USERNAME, command);
 
-        assertEquals("Asset not found", result, "Messages should be equal");
+        assertEquals("Unknown asset: ETH", result, "Messages should be equal");
         verify(userStorageMock, times(1)).get(USERNAME);
         verify(userStorageMock, never()).update(any());
-        verify(assetStorageMock, times(1)).getAsset("ETH");
+        verify(assetStorageMock, times(1)).getPriceSnapshot();
     }
 
     @Test
@@ -359,12 +408,13 @@ class CommandExecutorTest {
         assertEquals("Log in first", result, "Messages should be equal");
         verify(userStorageMock, times(1)).get(null);
         verify(userStorageMock, never()).update(any());
-        verify(assetStorageMock, never()).getAsset(any());
+        verify(assetStorageMock, never()).getPriceSnapshot();
     }
 
     @Test
     public void testSummaryWithNoInvestments() throws AssetStorageException {
         when(userStorageMock.get(USERNAME)).thenReturn(user);
+        when(assetStorageMock.getPriceSnapshot()).thenReturn(new PriceSnapshot(1, List.of()));
 
         Command command = new Command(Command.SUMMARY, new String[]{});
         String result = commandExecutor.execute(USERNAME, command);
@@ -375,7 +425,7 @@ class CommandExecutorTest {
 
         assertEquals(expectedSummary, result, "Summaries should be equal");
         verify(userStorageMock, times(1)).get(USERNAME);
-        verify(assetStorageMock, times(1)).getAssetPrices(user.getWallet().getInvestments());
+        verify(assetStorageMock, times(1)).getPriceSnapshot();
     }
 
     @Test
@@ -384,7 +434,8 @@ class CommandExecutorTest {
         user.getWallet().buy("BTC", 500.0, 500.0);
 
         when(userStorageMock.get(USERNAME)).thenReturn(user);
-        when(assetStorageMock.getAssetPrices(any())).thenReturn(Map.of("BTC", 500.0));
+        when(assetStorageMock.getPriceSnapshot())
+            .thenReturn(new PriceSnapshot(1, List.of(new Asset("BTC", "Bitcoin", true, 500.0))));
 
         Command command = new Command(Command.SUMMARY, new String[]{});
         String result = commandExecutor.execute(USERNAME, command);
@@ -398,7 +449,7 @@ class CommandExecutorTest {
 
         assertEquals(expectedSummary, result, "Summaries should be equal");
         verify(userStorageMock, times(1)).get(USERNAME);
-        verify(assetStorageMock, times(1)).getAssetPrices(user.getWallet().getInvestments());
+        verify(assetStorageMock, times(1)).getPriceSnapshot();
     }
 
     @Test
@@ -410,7 +461,7 @@ class CommandExecutorTest {
 
         assertEquals("Log in first", result, "Messages should be equal");
         verify(userStorageMock, times(1)).get(null);
-        verify(assetStorageMock, never()).getAssetPrices(any());
+        verify(assetStorageMock, never()).getPriceSnapshot();
     }
 
     @Test
@@ -420,7 +471,8 @@ class CommandExecutorTest {
         user.getWallet().buy("ETH", 300.0, 300.0);
 
         when(userStorageMock.get(USERNAME)).thenReturn(user);
-        when(assetStorageMock.getAssetPrices(any())).thenReturn(Map.of("BTC", 500.0, "ETH", 210.0));
+        when(assetStorageMock.getPriceSnapshot()).thenReturn(new PriceSnapshot(1,
+            List.of(new Asset("BTC", "Bitcoin", true, 500.0), new Asset("ETH", "Ethereum", true, 210.0))));
 
         Command command = new Command(Command.TRENDS, new String[]{});
         String result = commandExecutor.execute(USERNAME, command);
@@ -428,7 +480,7 @@ class CommandExecutorTest {
 
         assertEquals(expected, result, "Messages should be equal");
         verify(userStorageMock, times(1)).get(USERNAME);
-        verify(assetStorageMock, times(1)).getAssetPrices(user.getWallet().getInvestments());
+        verify(assetStorageMock, times(1)).getPriceSnapshot();
     }
 
     @Test
@@ -440,7 +492,7 @@ class CommandExecutorTest {
 
         assertEquals("Log in first", result, "Messages should be equal");
         verify(userStorageMock, times(1)).get(USERNAME);
-        verify(assetStorageMock, never()).getAssetPrices(any());
+        verify(assetStorageMock, never()).getPriceSnapshot();
     }
 
     @Test
@@ -488,6 +540,22 @@ class CommandExecutorTest {
         verify(userStorageMock, times(1)).get(null);
     }
 
+    @Test
+    public void testProtocolSwitch() {
+        Command command = new Command(Command.PROTOCOL, new String[]{"binary"});
+        String result = commandExecutor.execute(null, command);
+
+        assertEquals("Switched to binary protocol", result, "Messages should be equal");
+    }
+
+    @Test
+    public void testUnknownProtocol() {
+        Command command = new Command(Command.PROTOCOL, new String[]{"json"});
+        String result = commandExecutor.execute(null, command);
+
+        assertEquals("Unknown protocol", result, "Messages should be equal");
+    }
+
     @Test
     public void testUnknownCommandWhenLoggedIn() {
         when(userStorageMock.get(USERNAME)).thenReturn(user);
@@ -509,4 +577,81 @@ class CommandExecutorTest {
         assertEquals("Unknown command", result, "Messages should be equal");
         verify(userStorageMock, times(1)).get(null);
     }
+
+    @Test
+    public void testConcurrentTradingConservesBalance(@TempDir Path directory) throws Exception {
+        final int accounts = 8;
+        final int threads = 8;
+        final int operations = 500;
+        final double initialBalance = 1000;
+        final Map<String, Double> prices = Map.of("BTC", 2.0, "ETH", 4.0);
+
+        lenient().when(assetStorageMock.getPriceSnapshot()).thenReturn(new PriceSnapshot(1,
+            List.of(new Asset("BTC", "Bitcoin", true, 2.0), new Asset("ETH", "Ethereum", true, 4.0))));
+
+        String filePath = directory.resolve("users.csv").toString();
+        List<String> usernames = new ArrayList<>();
+        List<String> states = new ArrayList<>();
+
+        try (DefaultCryptoUserStorage userStorage = new DefaultCryptoUserStorage(filePath)) {
+            CommandExecutor executor = new CommandExecutor(userStorage, assetStorageMock);
+
+            for (int i = 0; i < accounts; i++) {
+                usernames.add(USERNAME + i);
+                userStorage.add(new DefaultCryptoUser(USERNAME + i, PASSWORD));
+                executor.execute(USERNAME + i, new Command(Command.DEPOSIT, new String[]{"1000"}));
+            }
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int t = 0; t < threads; t++) {
+                Random random = new Random(t);
+
+                futures.add(pool.submit(() -> {
+                    start.await();
+
+                    for (int i = 0; i < operations; i++) {
+                        String username = usernames.get(random.nextInt(accounts));
+                        String assetId = random.nextBoolean() ? "BTC" : "ETH";
+                        Command command = random.nextInt(3) == 0
+                            ? new Command(Command.SELL, new String[]{assetId})
+                            : new Command(Command.BUY, new String[]{assetId, String.valueOf(1 + random.nextInt(50))});
+
+                        executor.execute(username, command);
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            pool.shutdown();
+
+            double total = 0;
+
+            for (String username : usernames) {
+                CryptoUser account = userStorage.get(username);
+
+                assertTrue(account.getWallet().getBalance() >= 0, "Balance should never become negative");
+                total += account.getWallet().getBalance() + account.getWallet().getCryptoBalance(prices);
+                states.add(account.toString());
+            }
+
+            assertEquals(accounts * initialBalance, total, "Trading should neither create nor destroy money");
+        }
+
+        try (DefaultCryptoUserStorage reopened = new DefaultCryptoUserStorage(filePath)) {
+            for (int i = 0; i < accounts; i++) {
+                assertEquals(states.get(i), reopened.get(usernames.get(i)).toString(),
+                    "Persisted state should match the last update of each user");
+            }
+        }
+    }
 }
@@ -2,9 +2,62 @@ package bg.sofia.uni.fmi.mjt.crypto.command;
 
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class CommandParserTest {
+    private static final double DELTA = 0.000001;
+    private static final int ALLOCATION_ITERATIONS = 100_000;
+
+    private final CommandParser parser = new CommandParser();
+
+    private static ByteBuffer bufferOf(String input) {
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long bytesPerParse(ByteBuffer input) {
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+            parser.parse(input);
+        }
+
+        long before = allocatedBytes();
+
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+            parser.parse(input);
+        }
+
+        return (allocatedBytes() - before) / ALLOCATION_ITERATIONS;
+    }
+
+    private static long bytesPerLegacyParse(String input) {
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+            CommandParser.parseCommand(input);
+        }
+
+        long before = allocatedBytes();
+
+        for (int i = 0; i < ALLOCATION_ITERATIONS; i++) {
+            CommandParser.parseCommand(input);
+        }
+
+        return (allocatedBytes() - before) / ALLOCATION_ITERATIONS;
+    }
     @Test
     public void testParseCommandWithNoArguments() {
         String input = "list";
@@ -74,4 +127,80 @@ class CommandParserTest {
         assertEquals(0, arguments.length, "Command should have no arguments");
         assertEquals(Command.empty(), command, "Command should be equal to empty command");
     }
+
+    @Test
+    public void testParseBufferWithNoArgumentsReturnsSharedCommand() {
+        Command first = parser.parse(bufferOf("list"));
+        Command second = parser.parse(bufferOf("  list \n"));
+
+        assertEquals("list", first.name(), "Command should have name \"list\"");
+        assertEquals(0, first.arguments().length, "Command should have no arguments");
+        assertSame(first, second, "Commands without arguments should be shared");
+    }
+
+    @Test
+    public void testParseBufferWithAmount() {
+        Command command = parser.parse(bufferOf("deposit 500.25"));
+
+        assertEquals("deposit", command.name(), "Command should have name \"deposit\"");
+        assertEquals(1, command.arguments().length, "Command should have one argument");
+        assertTrue(command.hasAmount(), "Amount should be parsed");
+        assertEquals(500.25, command.amount(), DELTA, "Amount should be 500.25");
+    }
+
+    @Test
+    public void testParseBufferMatchesDoubleParsing() {
+        String[] amounts = {"0.1", "-50.0", "100", "123456789.012345", "7.", ".5"};
+
+        for (String amount : amounts) {
+            Command command = parser.parse(bufferOf("deposit " + amount));
+
+            assertEquals(Double.parseDouble(amount), command.amount(), "Amount " + amount + " should be exact");
+        }
+    }
+
+    @Test
+    public void testParseBufferWithInvalidAmountKeepsArgument() {
+        Command command = parser.parse(bufferOf("buy BTC abc"));
+
+        assertEquals("buy", command.name(), "Command should have name \"buy\"");
+        assertFalse(command.hasAmount(), "Invalid amount should not be parsed");
+        assertArrayEquals(new String[]{"BTC", "abc"}, command.arguments(), "Arguments should be kept as text");
+    }
+
+    @Test
+    public void testParseBufferInternsAssetIds() {
+        Command first = parser.parse(bufferOf("buy BTC 100"));
+        Command second = parser.parse(bufferOf("sell BTC"));
+
+        assertEquals("BTC", first.arguments()[0], "First argument should be BTC");
+        assertSame(first.arguments()[0], second.arguments()[0], "Asset ids should be interned");
+    }
+
+    @Test
+    public void testParseBufferWithUnknownCommandOrArity() {
+        Command unknown = parser.parse(bufferOf("foo bar"));
+        Command extra = parser.parse(bufferOf("summary now"));
+
+        assertEquals("foo", unknown.name(), "Command should have name \"foo\"");
+        assertArrayEquals(new String[]{"bar"}, unknown.arguments(), "Arguments should be decoded");
+        assertEquals("summary", extra.name(), "Command should have name \"summary\"");
+        assertArrayEquals(new String[]{"now"}, extra.arguments(), "Arguments should be decoded");
+    }
+
+    @Test
+    public void testParseBufferWithWhitespaceInput() {
+        assertSame(Command.empty(), parser.parse(bufferOf(" \t ")), "Command should be equal to empty command");
+    }
+
+    @Test
+    public void testParseBufferAllocation() {
+        long listBytes = bytesPerParse(bufferOf("list"));
+        long depositBytes = bytesPerParse(bufferOf("deposit 500.25"));
+        long legacyDepositBytes = bytesPerLegacyParse("deposit 500.25");
+
+        assertEquals(0, listBytes, "Parsing a command without arguments should not allocate");
+        assertTrue(depositBytes <= 64, "Parsing a deposit should allocate at most the command itself");
+        assertTrue(depositBytes * 4 < legacyDepositBytes, "Parsing should allocate far less than the string parser");
+    }
 }
@@ -0,0 +1,114 @@
+package bg.sofia.uni.fmi.mjt.crypto.protocol;
+
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryCommandDecoderTest {
+    private static final double DELTA = 0.000001;
+
+    private final BinaryCommandDecoder decoder = new BinaryCommandDecoder();
+
+    private static ByteBuffer payloadOf(Command command) {
+        ByteBuffer frame = BinaryCommandEncoder.encode(command);
+
+        return frame.position(FrameEncoder.HEADER_LENGTH).slice();
+    }
+
+    @Test
+    void testDecodeLogIn() {
+        String[] arguments = {"username", "password"};
+        Command command = decoder.decode(payloadOf(new Command(Command.LOG_IN, arguments)));
+
+        assertEquals(Command.LOG_IN, command.name(), "Command should have name \"login\"");
+        assertArrayEquals(arguments, command.arguments(), "Arguments should match");
+    }
+
+    @Test
+    void testDecodeDepositCarriesAmount() {
+        Command command = decoder.decode(payloadOf(new Command(Command.DEPOSIT, new String[]{"250.5"})));
+
+        assertEquals(Command.DEPOSIT, command.name(), "Command should have name \"deposit\"");
+        assertEquals(1, command.arguments().length, "Command should have one argument");
+        assertEquals(250.5, command.amount(), DELTA, "Amount should be decoded");
+    }
+
+    @Test
+    void testDecodeBuyInternsAssetId() {
+        Command first = decoder.decode(payloadOf(new Command(Command.BUY, new String[]{"BTC", "100"})));
+        Command second = decoder.decode(payloadOf(new Command(Command.BUY, new String[]{"BTC", "50"})));
+
+        assertEquals("BTC", first.arguments()[0], "Asset id should be decoded");
+        assertSame(first.arguments()[0], second.arguments()[0], "Asset ids should be interned");
+        assertEquals(100.0, first.amount(), DELTA, "First amount should be decoded");
+        assertEquals(50.0, second.amount(), DELTA, "Second amount should be decoded");
+    }
+
+    @Test
+    void testDecodeCommandWithoutArguments() {
+        Command command = decoder.decode(payloadOf(new Command(Command.SUMMARY, new String[]{})));
+
+        assertEquals(Command.SUMMARY, command.name(), "Command should have name \"summary\"");
+        assertEquals(0, command.arguments().length, "Command should have no arguments");
+    }
+
+    @Test
+    void testDecodeTruncatedPayload() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[]{Opcode.DEPOSIT.getCode(), 0x01});
+
+        assertSame(Command.empty(), decoder.decode(payload), "Truncated payload should decode to empty command");
+    }
+
+    @Test
+    void testDecodeUnknownOpcode() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[]{0x7F});
+
+        assertSame(Command.empty(), decoder.decode(payload), "Unknown opcode should decode to empty command");
+    }
+
+    @Test
+    void testDecodeRejectsUsernameWithFieldDelimiter() {
+        Command command = new Command(Command.SIGN_UP, new String[]{"user;name", "password"});
+
+        assertSame(Command.empty(), decoder.decode(payloadOf(command)),
+            "Username with a field delimiter should decode to empty command");
+    }
+
+    @Test
+    void testDecodeRejectsUsernameWithLineBreak() {
+        Command command = new Command(Command.LOG_IN, new String[]{"user\nname", "password"});
+
+        assertSame(Command.empty(), decoder.decode(payloadOf(command)),
+            "Username with a line break should decode to empty command");
+    }
+
+    @Test
+    void testDecodeRejectsAssetIdWithSeparator() {
+        assertSame(Command.empty(), decoder.decode(payloadOf(new Command(Command.BUY, new String[]{"BTC;", "1"}))),
+            "Asset id with a field delimiter should decode to empty command");
+        assertSame(Command.empty(), decoder.decode(payloadOf(new Command(Command.SELL, new String[]{"BT C"}))),
+            "Asset id with whitespace should decode to empty command");
+    }
+
+    @Test
+    void testDecodeAllowsSeparatorsInPassword() {
+        String[] arguments = {"username", "pass word;"};
+        Command command = decoder.decode(payloadOf(new Command(Command.SIGN_UP, arguments)));
+
+        assertArrayEquals(arguments, command.arguments(), "Passwords are hashed and may contain any character");
+    }
+
+    @Test
+    void testEncodeInvalidAmount() {
+        Command command = new Command(Command.DEPOSIT, new String[]{"invalid"});
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryCommandEncoder.encode(command),
+            "IllegalArgumentException expected for non-numeric amount");
+    }
+}
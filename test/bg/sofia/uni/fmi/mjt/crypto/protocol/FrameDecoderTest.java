@@ -0,0 +1,95 @@
+package bg.sofia.uni.fmi.mjt.crypto.protocol;
+
+import bg.sofia.uni.fmi.mjt.crypto.exception.FrameException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameDecoderTest {
+    private static ReadableByteChannel channelOf(ByteBuffer... frames) {
+        int length = 0;
+
+        for (ByteBuffer frame : frames) {
+            length += frame.remaining();
+        }
+
+        ByteBuffer joined = ByteBuffer.allocate(length);
+
+        for (ByteBuffer frame : frames) {
+            joined.put(frame);
+        }
+
+        return Channels.newChannel(new ByteArrayInputStream(joined.array()));
+    }
+
+    @Test
+    void testNextFrameSplitsCoalescedFrames() throws IOException {
+        FrameDecoder decoder = new FrameDecoder(64);
+        ReadableByteChannel channel = channelOf(FrameEncoder.encode("login user pass"), FrameEncoder.encode("list"));
+
+        decoder.readFrom(channel);
+
+        assertEquals("login user pass", decoder.nextFrame(), "First frame should be decoded");
+        assertEquals("list", decoder.nextFrame(), "Second frame should be decoded");
+        assertNull(decoder.nextFrame(), "No more frames expected");
+    }
+
+    @Test
+    void testNextFrameWaitsForPartialFrame() throws IOException {
+        FrameDecoder decoder = new FrameDecoder(64);
+        ByteBuffer frame = FrameEncoder.encode("summary");
+        ByteBuffer head = frame.duplicate().limit(6);
+        ByteBuffer tail = frame.duplicate().position(6);
+
+        decoder.readFrom(channelOf(head));
+        assertNull(decoder.nextFrame(), "Incomplete frame should not be decoded");
+
+        decoder.readFrom(channelOf(tail));
+        assertEquals("summary", decoder.nextFrame(), "Frame should be decoded once complete");
+    }
+
+    @Test
+    void testNextFrameGrowsBufferForLargeFrame() throws IOException {
+        FrameDecoder decoder = new FrameDecoder(16);
+        String message = "BTC: 19424.470312\n".repeat(1000);
+        ReadableByteChannel channel = channelOf(FrameEncoder.encode(message));
+
+        String frame;
+
+        while ((frame = decoder.nextFrame()) == null) {
+            assertTrue(decoder.readFrom(channel) >= 0, "Channel should not reach end before the frame is read");
+        }
+
+        assertEquals(message, frame, "Large frame should be decoded intact");
+        assertTrue(decoder.capacity() >= message.length(), "Buffer should grow to fit the frame");
+    }
+
+    @Test
+    void testNextFrameThrowsForInvalidLength() throws IOException {
+        FrameDecoder decoder = new FrameDecoder(16);
+
+        decoder.readFrom(channelOf(ByteBuffer.allocate(Integer.BYTES).putInt(-1).flip()));
+
+        assertThrows(FrameException.class, decoder::nextFrame, "FrameException expected for negative length");
+    }
+
+    @Test
+    void testNextFrameThrowsForOversizedLength() throws IOException {
+        FrameDecoder decoder = new FrameDecoder(16);
+
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(FrameDecoder.MAX_FRAME_LENGTH + 1).flip();
+
+        decoder.readFrom(channelOf(header));
+
+        assertThrows(FrameException.class, decoder::nextFrame, "FrameException expected for oversized length");
+    }
+}
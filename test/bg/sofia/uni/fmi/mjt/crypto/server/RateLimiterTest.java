@@ -0,0 +1,127 @@
+package bg.sofia.uni.fmi.mjt.crypto.server;
+
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final Command SUMMARY = new Command(Command.SUMMARY, new String[]{});
+    private static final Command LOG_IN = new Command(Command.LOG_IN, new String[]{"username", "password"});
+
+    private static final InetAddress FIRST_ADDRESS = InetAddress.getLoopbackAddress();
+    private static final InetAddress SECOND_ADDRESS = new InetSocketAddress("10.0.0.1", 0).getAddress();
+
+    @Test
+    void testBurstIsAllowedThenRejected() {
+        RateLimiter rateLimiter = new RateLimiter(new RateLimit(1, 5), RateLimit.unlimited());
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.tryAcquire(FIRST_ADDRESS, null, SUMMARY, 0), "Burst should be allowed");
+        }
+
+        assertFalse(rateLimiter.tryAcquire(FIRST_ADDRESS, null, SUMMARY, 0), "Request over the burst should be rejected");
+        assertTrue(rateLimiter.tryAcquire(SECOND_ADDRESS, null, SUMMARY, 0), "Other addresses should not be affected");
+    }
+
+    @Test
+    void testTokensAreRefilledOverTime() {
+        RateLimiter rateLimiter = new RateLimiter(new RateLimit(2, 2), RateLimit.unlimited());
+
+        assertTrue(rateLimiter.tryAcquire(FIRST_ADDRESS, null, SUMMARY, 0), "First request should be allowed");
+        assertTrue(rateLimiter.tryAcquire(FIRST_ADDRESS, null, SUMMARY, 0), "Second request should be allowed");
+        assertFalse(rateLimiter.tryAcquire(FIRST_ADDRESS, null, SUMMARY, 0), "Third request should be rejected");
+        assertTrue(rateLimiter.tryAcquire(FIRST_ADDRESS, null, SUMMARY, SECOND / 2), "Token should be refilled");
+    }
+
+    @Test
+    void testCommandCostsAreWeighted() {
+        RateLimiter rateLimiter = new RateLimiter(new RateLimit(1, 10), RateLimit.unlimited(),
+            Map.of(Command.LOG_IN, 8));
+
+        assertTrue(rateLimiter.tryAcquire(FIRST_ADDRESS, null, LOG_IN, 0), "First login should be allowed");
+        assertFalse(rateLimiter.tryAcquire(FIRST_ADDRESS, null, LOG_IN, 0), "Second login should be rejected");
+        assertTrue(rateLimiter.tryAcquire(FIRST_ADDRESS, null, SUMMARY, 0), "Cheap command should still fit");
+    }
+
+    @Test
+    void testUserLimitAppliesAcrossAddresses() {
+        RateLimiter rateLimiter = new RateLimiter(RateLimit.unlimited(), new RateLimit(1, 2));
+
+        assertTrue(rateLimiter.tryAcquire(FIRST_ADDRESS, "username", SUMMARY, 0), "First request should be allowed");
+        assertTrue(rateLimiter.tryAcquire(SECOND_ADDRESS, "username", SUMMARY, 0), "Second request should be allowed");
+        assertFalse(rateLimiter.tryAcquire(FIRST_ADDRESS, "username", SUMMARY, 0), "User should be limited");
+        assertTrue(rateLimiter.tryAcquire(FIRST_ADDRESS, null, SUMMARY, 0), "Anonymous requests should not be limited");
+    }
+
+    @Test
+    void testRequestRejectedByUserLimitDoesNotChargeAddress() {
+        RateLimiter rateLimiter = new RateLimiter(new RateLimit(1, 2), new RateLimit(1, 1));
+
+        assertTrue(rateLimiter.tryAcquire(FIRST_ADDRESS, "username", SUMMARY, 0), "First request should be allowed");
+
+        for (int i = 0; i < 5; i++) {
+            assertFalse(rateLimiter.tryAcquire(FIRST_ADDRESS, "username", SUMMARY, 0), "User should be limited");
+        }
+
+        assertTrue(rateLimiter.tryAcquire(FIRST_ADDRESS, "other", SUMMARY, 0),
+            "Rejected requests should not use up the address budget");
+        assertFalse(rateLimiter.tryAcquire(FIRST_ADDRESS, "other", SUMMARY, 0), "Address should now be limited");
+    }
+
+    @Test
+    void testFullBucketsAreEvicted() {
+        RateLimiter rateLimiter = new RateLimiter(new RateLimit(1, 5), new RateLimit(1, 5));
+
+        rateLimiter.tryAcquire(FIRST_ADDRESS, "username", SUMMARY, 0);
+
+        assertEquals(2, rateLimiter.size(), "Address and user buckets should be created");
+        assertEquals(0, rateLimiter.evictFullBuckets(0), "Used buckets should be kept");
+        assertEquals(2, rateLimiter.evictFullBuckets(SECOND), "Refilled buckets should be evicted");
+        assertEquals(0, rateLimiter.size(), "No buckets should be left");
+    }
+
+    @Test
+    void testConcurrentAcquisitionsNeverExceedBurst() throws InterruptedException {
+        int burst = 1000;
+        int threadCount = 8;
+        RateLimiter rateLimiter = new RateLimiter(new RateLimit(0.001, burst), RateLimit.unlimited());
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for (int j = 0; j < burst; j++) {
+                    if (rateLimiter.tryAcquire(FIRST_ADDRESS, null, SUMMARY, 0)) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(burst, allowed.get(), "Exactly the burst should be allowed");
+    }
+}
@@ -0,0 +1,477 @@
+package bg.sofia.uni.fmi.mjt.crypto.server;
+
+import bg.sofia.uni.fmi.mjt.crypto.command.Command;
+import bg.sofia.uni.fmi.mjt.crypto.command.CommandExecutor;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameDecoder;
+import bg.sofia.uni.fmi.mjt.crypto.protocol.FrameEncoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReactorTest {
+    private static final int CAPACITY = 1024;
+    private static final long HIGH_WATER_MARK = 64 * 1024;
+    private static final String LARGE_RESPONSE = "BTC: 19424.470312\n".repeat(4096);
+    private static final int PIPELINED_REQUESTS = 200;
+    private static final long IDLE_MILLIS = 300;
+    private static final int FLOODED_REQUESTS = 20_000;
+
+    @Mock
+    private CommandExecutor executorMock;
+
+    private ServerSocketChannel serverSocketChannel;
+    private ExecutorService workers;
+    private Reactor reactor;
+    private Thread reactorThread;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        lenient().when(executorMock.submitEncoded(any(), any()))
+            .thenAnswer(invocation -> CompletableFuture.completedFuture(FrameEncoder.encode(LARGE_RESPONSE)));
+
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.bind(new InetSocketAddress("localhost", 0));
+
+        workers = Executors.newFixedThreadPool(2);
+        reactor = new Reactor(executorMock, workers, CAPACITY, HIGH_WATER_MARK);
+        reactorThread = new Thread(reactor);
+        reactorThread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException, InterruptedException {
+        reactor.stop();
+        reactorThread.join();
+        workers.shutdown();
+        serverSocketChannel.close();
+    }
+
+    private SocketChannel connect(int receiveBufferSize) throws IOException {
+        return connect(reactor, receiveBufferSize);
+    }
+
+    private SocketChannel connect(Reactor reactor, int receiveBufferSize) throws IOException {
+        SocketChannel client = SocketChannel.open();
+        client.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        client.connect(serverSocketChannel.getLocalAddress());
+
+        reactor.register(serverSocketChannel.accept());
+
+        return client;
+    }
+
+    private static FrameDecoder responseDecoder() {
+        return new FrameDecoder(CAPACITY, FrameDecoder.MAX_RESPONSE_FRAME_LENGTH);
+    }
+
+    private static void send(SocketChannel client, String request) throws IOException {
+        ByteBuffer buffer = FrameEncoder.encode(request);
+
+        while (buffer.hasRemaining()) {
+            client.write(buffer);
+        }
+    }
+
+    private static String receive(SocketChannel client, FrameDecoder decoder) throws IOException {
+        String response;
+
+        while ((response = decoder.nextFrame()) == null) {
+            if (decoder.readFrom(client) < 0) {
+                throw new EOFException();
+            }
+        }
+
+        return response;
+    }
+
+    private void awaitStablePendingOutput() throws InterruptedException {
+        long previous = -1;
+        long current = reactor.getPendingOutputBytes();
+
+        while (current != previous) {
+            Thread.sleep(200);
+            previous = current;
+            current = reactor.getPendingOutputBytes();
+        }
+    }
+
+    @Test
+    void testSlowReaderKeepsPendingOutputBoundedAndDoesNotBlockOthers() throws Exception {
+        try (SocketChannel slowClient = connect(4096); SocketChannel fastClient = connect(CAPACITY * 64)) {
+            for (int i = 0; i < PIPELINED_REQUESTS; i++) {
+                send(slowClient, "list");
+            }
+
+            awaitStablePendingOutput();
+
+            long responseFrameLength = FrameEncoder.encode(LARGE_RESPONSE).remaining();
+            assertTrue(reactor.getPendingOutputBytes() > 0, "Slow reader should have queued output");
+            assertTrue(reactor.getPendingOutputBytes() <= HIGH_WATER_MARK + responseFrameLength,
+                "Queued output should stay bounded by the high-water mark");
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                send(fastClient, "list");
+                assertEquals(LARGE_RESPONSE, receive(fastClient, responseDecoder()),
+                    "Fast client should get its response while the slow reader is stalled");
+            });
+
+            FrameDecoder slowDecoder = responseDecoder();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+                for (int i = 0; i < PIPELINED_REQUESTS; i++) {
+                    assertEquals(LARGE_RESPONSE, receive(slowClient, slowDecoder),
+                        "Slow reader should eventually receive every response intact");
+                }
+            });
+        }
+    }
+
+    @Test
+    void testPipelinedRequestsAreAnsweredInOrderWithSessionState() throws Exception {
+        when(executorMock.execute(any(), any())).thenAnswer(invocation -> {
+            String username = invocation.getArgument(0);
+            Command command = invocation.getArgument(1);
+
+            return Command.LOG_IN.equals(command.name()) ? command.arguments()[0] : command.name() + ":" + username;
+        });
+        when(executorMock.submitEncoded(any(), any())).thenAnswer(invocation -> {
+            String username = invocation.getArgument(0);
+            Command command = invocation.getArgument(1);
+
+            return CompletableFuture.completedFuture(FrameEncoder.encode(command.name() + ":" + username));
+        });
+
+        List<String> requests = List.of("summary", "login username password", "summary", "logout", "summary");
+        List<String> expected = List.of("summary:null", "Welcome", "summary:username", "logout:username",
+            "summary:null");
+
+        try (SocketChannel client = connect(CAPACITY * 64)) {
+            ByteBuffer[] frames = requests.stream()
+                .map(FrameEncoder::encode)
+                .toArray(ByteBuffer[]::new);
+
+            client.write(frames);
+
+            FrameDecoder decoder = responseDecoder();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                for (String response : expected) {
+                    assertEquals(response, receive(client, decoder), "Responses should arrive in request order");
+                }
+            });
+        }
+    }
+
+    @Test
+    void testSlowLoginDoesNotDelayOtherSessionsAndKeepsReplyOrder() throws Exception {
+        CountDownLatch loginStarted = new CountDownLatch(1);
+        CountDownLatch releaseLogin = new CountDownLatch(1);
+
+        when(executorMock.execute(any(), any())).thenAnswer(invocation -> {
+            Command command = invocation.getArgument(1);
+
+            loginStarted.countDown();
+            releaseLogin.await();
+
+            return command.arguments()[0];
+        });
+        when(executorMock.submitEncoded(any(), any())).thenAnswer(invocation -> {
+            String username = invocation.getArgument(0);
+            Command command = invocation.getArgument(1);
+
+            return CompletableFuture.completedFuture(FrameEncoder.encode(command.name() + ":" + username));
+        });
+
+        try (SocketChannel slowClient = connect(CAPACITY * 64); SocketChannel fastClient = connect(CAPACITY * 64)) {
+            slowClient.write(new ByteBuffer[]{FrameEncoder.encode("login username password"),
+                FrameEncoder.encode("summary"), FrameEncoder.encode("list")});
+
+            FrameDecoder slowDecoder = responseDecoder();
+            FrameDecoder fastDecoder = responseDecoder();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                loginStarted.await();
+
+                send(fastClient, "list");
+                assertEquals("list:null", receive(fastClient, fastDecoder),
+                    "Another session should be served while a login is blocked on a worker");
+            });
+
+            releaseLogin.countDown();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals("Welcome", receive(slowClient, slowDecoder), "Login reply should come first");
+                assertEquals("summary:username", receive(slowClient, slowDecoder),
+                    "Replies should keep request order after a slow command");
+                assertEquals("list:username", receive(slowClient, slowDecoder),
+                    "Replies should keep request order after a slow command");
+            });
+        } finally {
+            releaseLogin.countDown();
+        }
+    }
+
+    @Test
+    void testPipeliningWithoutReadingKeepsQueuedCommandsBounded() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(executorMock.submitEncoded(any(), any())).thenAnswer(invocation -> {
+            release.await();
+            return CompletableFuture.completedFuture(FrameEncoder.encode("ok"));
+        });
+
+        ByteBuffer requests = ByteBuffer.allocate(FLOODED_REQUESTS * FrameEncoder.encode("summary").remaining());
+
+        for (int i = 0; i < FLOODED_REQUESTS; i++) {
+            requests.put(FrameEncoder.encode("summary"));
+        }
+
+        requests.flip();
+
+        try (SocketChannel client = connect(CAPACITY * 64)) {
+            client.configureBlocking(false);
+
+            try {
+                for (int attempt = 0; attempt < 20 && requests.hasRemaining(); attempt++) {
+                    client.write(requests);
+                    Thread.sleep(50);
+                }
+
+                assertTrue(reactor.getQueuedCommands() > 0, "Flooding client should have queued commands");
+                assertTrue(reactor.getQueuedCommands() <= Reactor.MAX_QUEUED_COMMANDS + CAPACITY,
+                    "Queued commands should stay bounded while the session is executing");
+            } finally {
+                release.countDown();
+            }
+
+            FrameDecoder decoder = responseDecoder();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+                int received = 0;
+
+                while (received < FLOODED_REQUESTS) {
+                    client.write(requests);
+                    decoder.readFrom(client);
+
+                    while (decoder.nextFrame() != null) {
+                        received++;
+                    }
+                }
+            });
+
+            assertEquals(0, reactor.getQueuedCommands(), "Every queued command should be executed");
+        }
+    }
+
+    @Test
+    void testPendingDurabilityDelaysOnlyItsReplyAndFreesTheWorker() throws Exception {
+        CompletableFuture<ByteBuffer> durable = new CompletableFuture<>();
+
+        when(executorMock.submitEncoded(any(), any())).thenAnswer(invocation -> {
+            Command command = invocation.getArgument(1);
+
+            return Command.DEPOSIT.equals(command.name())
+                ? durable
+                : CompletableFuture.completedFuture(FrameEncoder.encode(command.name()));
+        });
+
+        ExecutorService singleWorker = Executors.newSingleThreadExecutor();
+        Reactor durableReactor = new Reactor(executorMock, singleWorker, CAPACITY, HIGH_WATER_MARK);
+        Thread durableReactorThread = new Thread(durableReactor);
+        durableReactorThread.start();
+
+        try (SocketChannel writer = connect(durableReactor, CAPACITY * 64);
+             SocketChannel reader = connect(durableReactor, CAPACITY * 64)) {
+            FrameDecoder writerDecoder = responseDecoder();
+            FrameDecoder readerDecoder = responseDecoder();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                send(writer, "deposit 10");
+                send(reader, "summary");
+
+                assertEquals("summary", receive(reader, readerDecoder),
+                    "The only worker should be free while a write waits for the log");
+            });
+
+            durable.complete(FrameEncoder.encode("deposited"));
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals("deposited", receive(writer, writerDecoder),
+                    "Reply should be sent once the write is durable");
+            });
+        } finally {
+            durableReactor.stop();
+            durableReactorThread.join();
+            singleWorker.shutdownNow();
+        }
+    }
+
+    @Test
+    void testOversizedFrameClosesConnection() throws Exception {
+        try (SocketChannel client = connect(CAPACITY)) {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(FrameDecoder.MAX_FRAME_LENGTH + 1).flip();
+
+            while (header.hasRemaining()) {
+                client.write(header);
+            }
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals(-1, client.read(ByteBuffer.allocate(1)), "Oversized frame should close the connection");
+            });
+        }
+    }
+
+    @Test
+    void testIdleConnectionIsClosed() throws Exception {
+        Reactor idleReactor = new Reactor(executorMock, workers, CAPACITY, HIGH_WATER_MARK,
+            new Timeouts(IDLE_MILLIS, 0, 0));
+        Thread idleReactorThread = new Thread(idleReactor);
+        idleReactorThread.start();
+
+        try (SocketChannel client = connect(idleReactor, CAPACITY)) {
+            long start = System.nanoTime();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals(-1, client.read(ByteBuffer.allocate(1)), "Idle connection should be closed");
+            });
+
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= IDLE_MILLIS / 2,
+                "Connection should not be closed long before its idle timeout");
+            assertEquals(0, idleReactor.getConnectionCount(), "Closed connection should not be counted");
+        } finally {
+            idleReactor.stop();
+            idleReactorThread.join();
+        }
+    }
+
+    @Test
+    void testRateLimitedRequestsAreRejectedWithoutReachingExecutor() throws Exception {
+        when(executorMock.submitEncoded(any(), any()))
+            .thenAnswer(invocation -> CompletableFuture.completedFuture(FrameEncoder.encode("ok")));
+
+        Reactor limitedReactor = new Reactor(executorMock, workers, CAPACITY, HIGH_WATER_MARK, Timeouts.defaults(),
+            new RateLimiter(new RateLimit(0.001, 2), RateLimit.unlimited()));
+        Thread limitedReactorThread = new Thread(limitedReactor);
+        limitedReactorThread.start();
+
+        try (SocketChannel client = connect(limitedReactor, CAPACITY)) {
+            for (int i = 0; i < 3; i++) {
+                send(client, "summary");
+            }
+
+            FrameDecoder decoder = responseDecoder();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals("ok", receive(client, decoder), "First request should be executed");
+                assertEquals("ok", receive(client, decoder), "Second request should be executed");
+                assertEquals("Too many requests. Try again later", receive(client, decoder),
+                    "Third request should be rejected");
+            });
+
+            verify(executorMock, times(2)).submitEncoded(any(), any());
+        } finally {
+            limitedReactor.stop();
+            limitedReactorThread.join();
+        }
+    }
+
+    @Test
+    void testCommandsAfterLoginInOneBatchAreChargedToTheNewUser() throws Exception {
+        when(executorMock.execute(any(), any())).thenAnswer(invocation -> {
+            Command command = invocation.getArgument(1);
+            return command.arguments()[0];
+        });
+        when(executorMock.submitEncoded(any(), any())).thenAnswer(invocation -> {
+            String username = invocation.getArgument(0);
+            Command command = invocation.getArgument(1);
+
+            return CompletableFuture.completedFuture(FrameEncoder.encode(command.name() + ":" + username));
+        });
+
+        Reactor limitedReactor = new Reactor(executorMock, workers, CAPACITY, HIGH_WATER_MARK, Timeouts.defaults(),
+            new RateLimiter(RateLimit.unlimited(), new RateLimit(0.001, 1), Map.of()));
+        Thread limitedReactorThread = new Thread(limitedReactor);
+        limitedReactorThread.start();
+
+        try (SocketChannel client = connect(limitedReactor, CAPACITY * 64)) {
+            client.write(new ByteBuffer[]{FrameEncoder.encode("login username password"),
+                FrameEncoder.encode("summary"), FrameEncoder.encode("summary")});
+
+            FrameDecoder decoder = responseDecoder();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertEquals("Welcome", receive(client, decoder), "Login should be executed");
+                assertEquals("summary:username", receive(client, decoder), "First request should be executed");
+                assertEquals("Too many requests. Try again later", receive(client, decoder),
+                    "Requests after the login should be charged to the logged in user");
+            });
+        } finally {
+            limitedReactor.stop();
+            limitedReactorThread.join();
+        }
+    }
+
+    @Test
+    void testRateLimitedBatchIsNotSubmittedToWorkers() throws Exception {
+        when(executorMock.submitEncoded(any(), any()))
+            .thenAnswer(invocation -> CompletableFuture.completedFuture(FrameEncoder.encode("ok")));
+
+        ThreadPoolExecutor limitedWorkers = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
+        Reactor limitedReactor = new Reactor(executorMock, limitedWorkers, CAPACITY, HIGH_WATER_MARK,
+            Timeouts.defaults(), new RateLimiter(new RateLimit(0.001, 2), RateLimit.unlimited()));
+        Thread limitedReactorThread = new Thread(limitedReactor);
+        limitedReactorThread.start();
+
+        try (SocketChannel client = connect(limitedReactor, CAPACITY)) {
+            FrameDecoder decoder = responseDecoder();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                for (int i = 0; i < 2; i++) {
+                    send(client, "summary");
+                    assertEquals("ok", receive(client, decoder), "Requests within the limit should be executed");
+                }
+
+                for (int i = 0; i < 3; i++) {
+                    send(client, "summary");
+                    assertEquals("Too many requests. Try again later", receive(client, decoder),
+                        "Requests over the limit should be rejected");
+                }
+            });
+
+            assertEquals(2, limitedWorkers.getTaskCount(), "Rejected requests should never reach the worker pool");
+        } finally {
+            limitedReactor.stop();
+            limitedReactorThread.join();
+            limitedWorkers.shutdown();
+        }
+    }
+}
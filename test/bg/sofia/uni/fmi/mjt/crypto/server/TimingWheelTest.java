@@ -0,0 +1,71 @@
+package bg.sofia.uni.fmi.mjt.crypto.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 4096;
+    private static final int CONNECTIONS = 100_000;
+    private static final int IDLE_TICKS = 1000;
+
+    @Test
+    void testPerTickCostDoesNotDependOnPendingTimeouts() {
+        TimingWheel wheel = new TimingWheel(TICK_MILLIS, WHEEL_SIZE, 0);
+        AtomicInteger fired = new AtomicInteger();
+
+        for (int i = 0; i < CONNECTIONS; i++) {
+            wheel.schedule(fired::incrementAndGet, IDLE_TICKS * TICK_MILLIS);
+        }
+
+        for (int tick = 1; tick < IDLE_TICKS; tick++) {
+            assertEquals(0, wheel.advance(tick * TICK_MILLIS), "No connection should expire before its deadline");
+        }
+
+        assertEquals(0, wheel.getVisitedCount(), "Ticks before the deadline should not touch pending timeouts");
+        assertEquals(CONNECTIONS, wheel.size(), "All timeouts should still be pending");
+
+        assertEquals(CONNECTIONS, wheel.advance(IDLE_TICKS * TICK_MILLIS), "All connections should expire together");
+        assertEquals(CONNECTIONS, wheel.getVisitedCount(), "Each timeout should be visited exactly once");
+        assertEquals(CONNECTIONS, fired.get(), "Each timeout should run exactly once");
+        assertEquals(0, wheel.size(), "No timeouts should be left");
+    }
+
+    @Test
+    void testCancelledTimeoutDoesNotRun() {
+        TimingWheel wheel = new TimingWheel(TICK_MILLIS, WHEEL_SIZE, 0);
+        AtomicInteger fired = new AtomicInteger();
+        List<TimingWheel.Timeout> scheduled = new ArrayList<>();
+
+        for (int i = 0; i < CONNECTIONS; i++) {
+            scheduled.add(wheel.schedule(fired::incrementAndGet, TICK_MILLIS));
+        }
+
+        for (int i = 0; i < CONNECTIONS; i += 2) {
+            scheduled.get(i).cancel();
+        }
+
+        assertEquals(CONNECTIONS / 2, wheel.size(), "Cancelled timeouts should be removed immediately");
+        assertEquals(CONNECTIONS / 2, wheel.advance(TICK_MILLIS), "Only active timeouts should run");
+        assertTrue(scheduled.get(0).isCancelled(), "Timeout should be marked as cancelled");
+    }
+
+    @Test
+    void testTimeoutBeyondOneRevolutionWaitsForItsRound() {
+        TimingWheel wheel = new TimingWheel(TICK_MILLIS, WHEEL_SIZE, 0);
+        AtomicInteger fired = new AtomicInteger();
+        long delayTicks = WHEEL_SIZE * 2L + 5;
+
+        wheel.schedule(fired::incrementAndGet, delayTicks * TICK_MILLIS);
+
+        assertEquals(0, wheel.advance((delayTicks - 1) * TICK_MILLIS), "Timeout should survive earlier revolutions");
+        assertEquals(1, wheel.advance(delayTicks * TICK_MILLIS), "Timeout should run on its own tick");
+        assertEquals(1, fired.get(), "Timeout should run exactly once");
+    }
+}
@@ -16,11 +16,25 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -33,6 +47,9 @@ import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class DefaultAssetServiceTest {
+    private static final int LARGE_ASSET_COUNT = 20_000;
+    private static final int TOP_ASSET_LIMIT = 150;
+
     private static Asset bitcoin;
     private static Asset ethereum;
 
@@ -46,6 +63,9 @@ class DefaultAssetServiceTest {
     @Mock
     private HttpResponse<String> serviceResponseMock;
 
+    @Mock
+    private HttpResponse<InputStream> streamResponseMock;
+
     @InjectMocks
     private DefaultAssetService service;
 
@@ -167,11 +187,7 @@ class DefaultAssetServiceTest {
 
     @Test
     public void testGetAssetsSuccess() throws AssetServiceException, IOException, InterruptedException {
-        when(serviceHttpClientMock.send(any(HttpRequest.class),
-            ArgumentMatchers.<HttpResponse.BodyHandler<String>>any()))
-            .thenReturn(serviceResponseMock);
-        when(serviceResponseMock.statusCode()).thenReturn(200);
-        when(serviceResponseMock.body()).thenReturn(assetsJson);
+        stubStreamResponse(assetsJson);
 
         Set<Asset> expected = Set.of(bitcoin, ethereum);
         Set<Asset> actual = service.getAssets();
@@ -180,8 +196,120 @@ class DefaultAssetServiceTest {
         assertTrue(expected.containsAll(actual), "Expected set should contain all the actual elements");
 
         verify(serviceHttpClientMock).send(any(HttpRequest.class), any());
-        verify(serviceResponseMock).statusCode();
-        verify(serviceResponseMock).body();
+        verify(streamResponseMock).statusCode();
+        verify(streamResponseMock).body();
+    }
+
+    @Test
+    public void testGetAssetsSkipsNonCryptoAssets() throws AssetServiceException, IOException, InterruptedException {
+        stubStreamResponse("""
+            [
+                {
+                    "asset_id": "USD",
+                    "name": "US Dollar",
+                    "type_is_crypto": 0,
+                    "price_usd": 1.0,
+                    "chain_addresses": [{"chain_id": "X", "address": "Y"}]
+                },
+                {
+                    "asset_id": "BTC",
+                    "name": "Bitcoin",
+                    "data_start": "2010-07-17",
+                    "type_is_crypto": 1,
+                    "volume_1day_usd": 1.5E10,
+                    "price_usd": 19424.470311714055519056008384,
+                    "id_icon": null
+                }
+            ]
+            """);
+
+        Set<Asset> actual = service.getAssets();
+
+        assertEquals(Set.of(bitcoin), actual, "Only crypto assets should be returned");
+        assertEquals(bitcoin.getPrice(), actual.iterator().next().getPrice(), 0.0001, "Price should be parsed");
+    }
+
+    @Test
+    public void testGetAssetsSkipsAssetsWithoutId() throws AssetServiceException, IOException, InterruptedException {
+        String json = """
+            [
+                {
+                    "name": "Missing",
+                    "type_is_crypto": 1,
+                    "price_usd": 5.0
+                },
+                {
+                    "asset_id": null,
+                    "name": "Null",
+                    "type_is_crypto": 1,
+                    "price_usd": 7.0
+                },
+                {
+                    "asset_id": "BTC",
+                    "name": "Bitcoin",
+                    "type_is_crypto": 1,
+                    "price_usd": 19424.470311714055519056008384
+                }
+            ]
+            """;
+        stubStreamResponse(json);
+
+        assertEquals(Set.of(bitcoin), service.getAssets(), "Assets without an id should be skipped");
+
+        stubStreamResponse(json);
+
+        assertEquals(List.of(bitcoin), service.getTopAssets(TOP_ASSET_LIMIT),
+            "Assets without an id should not be ranked");
+    }
+
+    @Test
+    public void testGetTopAssetsMatchesFullSort() throws AssetServiceException, IOException, InterruptedException {
+        String fixture = largeAssetsJson();
+        stubStreamResponse(fixture);
+
+        List<Asset> expected = parseBuffered(fixture).stream()
+            .sorted(Comparator.comparingDouble(Asset::getPrice).reversed())
+            .limit(TOP_ASSET_LIMIT)
+            .toList();
+
+        assertEquals(expected, service.getTopAssets(TOP_ASSET_LIMIT),
+            "Top assets should be the most expensive crypto assets in descending price order");
+    }
+
+    @Test
+    public void testGetTopAssetsWithZeroLimit() throws AssetServiceException, IOException, InterruptedException {
+        stubStreamResponse(assetsJson);
+
+        assertTrue(service.getTopAssets(0).isEmpty(), "No assets should be returned for a zero limit");
+    }
+
+    @Test
+    public void testGetAssetsThrowsForMalformedJson() throws IOException, InterruptedException {
+        stubStreamResponse("[{\"asset_id\": ");
+
+        assertThrows(AssetServiceException.class, () -> service.getAssets(),
+            "AssetServiceException expected for a truncated response");
+    }
+
+    @Test
+    public void testStreamingParserAllocatesLessThanBufferedParser() throws IOException {
+        String fixture = largeAssetsJson();
+        byte[] body = fixture.getBytes(StandardCharsets.UTF_8);
+
+        long bufferedBytes = allocatedBytes();
+        Set<Asset> buffered = parseBuffered(fixture);
+        bufferedBytes = allocatedBytes() - bufferedBytes;
+
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(body),
+            StandardCharsets.UTF_8));
+
+        long streamingBytes = allocatedBytes();
+        Set<Asset> streamed = DefaultAssetService.readCryptoAssets(reader);
+        streamingBytes = allocatedBytes() - streamingBytes;
+
+        assertEquals(buffered, streamed, "Both parsers should return the same crypto assets");
+        assertTrue(streamingBytes < bufferedBytes,
+            "Streaming should allocate less: " + streamingBytes + " vs " + bufferedBytes + " bytes");
     }
 
     @Test
@@ -267,11 +395,70 @@ class DefaultAssetServiceTest {
 
     private void assertGetAssetsThrowsAppropriateExceptionForStatusCode(Class<? extends AssetServiceException> exceptionClass, int statusCode)
         throws IOException, InterruptedException {
-        assertFunctionThrowsAppropriateExceptionForStatusCode(exceptionClass, statusCode, () -> service.getAssets());
+        when(serviceHttpClientMock.send(any(HttpRequest.class),
+            ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+            .thenReturn(streamResponseMock);
+        when(streamResponseMock.statusCode()).thenReturn(statusCode);
+
+        assertThrows(exceptionClass, () -> service.getAssets(),
+            exceptionClass.getSimpleName() + " expected for status code " + statusCode);
+
+        verify(serviceHttpClientMock).send(any(HttpRequest.class), any());
+        verify(streamResponseMock).statusCode();
     }
 
     private void assertGetAssetsThrowsAssetServiceExceptionInPlaceOf(Class<? extends Exception> exceptionClass)
         throws IOException, InterruptedException {
-        assertFunctionThrowsAssetServiceExceptionInPlaceOf(exceptionClass, () -> service.getAssets());
+        when(serviceHttpClientMock.send(any(HttpRequest.class),
+            ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+            .thenThrow(exceptionClass);
+
+        assertThrows(AssetServiceException.class, () -> service.getAssets(),
+            "AssetServiceException expected in place of " + exceptionClass.getSimpleName());
+
+        verify(serviceHttpClientMock).send(any(HttpRequest.class), any());
+        verify(streamResponseMock, never()).statusCode();
+        verify(streamResponseMock, never()).body();
+    }
+
+    private void stubStreamResponse(String json) throws IOException, InterruptedException {
+        when(serviceHttpClientMock.send(any(HttpRequest.class),
+            ArgumentMatchers.<HttpResponse.BodyHandler<InputStream>>any()))
+            .thenReturn(streamResponseMock);
+        when(streamResponseMock.statusCode()).thenReturn(200);
+        when(streamResponseMock.body()).thenReturn(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String largeAssetsJson() {
+        StringBuilder json = new StringBuilder("[");
+
+        for (int i = 0; i < LARGE_ASSET_COUNT; i++) {
+            json.append(i == 0 ? "" : ",").append("""
+                {"asset_id": "A%d", "name": "Asset %d", "type_is_crypto": %d, "data_quote_start": "2014-02-24T17:43:05",
+                "data_quote_end": "2024-01-01T00:00:00", "data_orderbook_start": "2014-02-24T17:43:05",
+                "data_trade_start": "2010-07-17T23:09:17", "data_symbols_count": 1234, "volume_1hrs_usd": 1.2E7,
+                "volume_1day_usd": 4.5E8, "volume_1mth_usd": 1.1E10, "price_usd": %d.25,
+                "id_icon": "4caf2b16-a017-4e26-a348-2cea69c34cba"}
+                """.formatted(i, i, i % 4 == 0 ? 0 : 1, i));
+        }
+
+        return json.append("]").toString();
+    }
+
+    private static Set<Asset> parseBuffered(String json) {
+        JsonDeserializer<Boolean> booleanDeserializer = (jsonElement, t, c) -> jsonElement.getAsInt() == 1;
+        Gson gson = new GsonBuilder().registerTypeAdapter(boolean.class, booleanDeserializer).create();
+        Set<Asset> assets = gson.fromJson(json, new TypeToken<Set<Asset>>() { }.getType());
+
+        return assets.stream()
+            .filter(Asset::isCrypto)
+            .collect(Collectors.toSet());
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
     }
 }
@@ -11,13 +11,19 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -29,7 +35,9 @@ class DefaultAssetStorageTest {
     private static Set<Asset> bitcoinSet;
     private static Set<Asset> assetSet;
 
-    private final AssetService serviceMock = Mockito.mock(AssetService.class);
+    private static final int HERD_SIZE = 1000;
+
+    private final AssetService serviceMock = Mockito.mock(AssetService.class, Mockito.CALLS_REAL_METHODS);
     private final DefaultAssetStorage storage = new DefaultAssetStorage(serviceMock);
 
     @BeforeAll
@@ -76,6 +84,24 @@ class DefaultAssetStorageTest {
         verify(serviceMock, times(2)).getAssets();
     }
 
+    @Test
+    void testPriceSnapshotIsUnaffectedByRefresh() throws AssetServiceException, AssetStorageException {
+        Asset cheaperBitcoin = new Asset("BTC", "Bitcoin", true, 1.0);
+        when(serviceMock.getAssets()).thenReturn(assetSet).thenReturn(Set.of(cheaperBitcoin));
+
+        PriceSnapshot before = storage.getPriceSnapshot();
+
+        storage.setUpdateInterval(0);
+
+        PriceSnapshot after = storage.getPriceSnapshot();
+
+        assertEquals(bitcoin.getPrice(), before.getPrice("BTC"), "Held snapshot should keep its prices");
+        assertEquals(ethereum.getPrice(), before.getPrice("ETH"), "Held snapshot should keep its assets");
+        assertEquals(1.0, after.getPrice("BTC"), "New snapshot should have refreshed prices");
+        assertEquals(0.0, after.getPrice("ETH"), "New snapshot should not contain dropped assets");
+        assertTrue(after.getEpoch() > before.getEpoch(), "New snapshot should have a later epoch");
+    }
+
     @Test
     void testGetAssetStorageChangeLimit() throws AssetServiceException, AssetStorageException {
         when(serviceMock.getAssets()).thenReturn(Set.of(bitcoin, ethereum));
@@ -150,4 +176,136 @@ class DefaultAssetStorageTest {
 
         verify(serviceMock).getAssets();
     }
+
+    @Test
+    void testGetEpochAdvancesOnUpdate() throws AssetServiceException, AssetStorageException {
+        when(serviceMock.getAssets()).thenReturn(bitcoinSet);
+
+        long first = storage.getEpoch();
+        long cached = storage.getEpoch();
+
+        storage.setUpdateInterval(0);
+
+        long refreshed = storage.getEpoch();
+
+        assertEquals(first, cached, "Epoch should not change without an update");
+        assertTrue(refreshed > first, "Epoch should advance after an update");
+
+        verify(serviceMock, times(2)).getAssets();
+    }
+
+    @Test
+    void testStaleSnapshotIsServedWhileRefreshing() throws Exception {
+        CountDownLatch refreshing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(serviceMock.getAssets()).thenReturn(bitcoinSet).thenAnswer(invocation -> {
+            refreshing.countDown();
+            release.await();
+            return Set.of(ethereum);
+        });
+
+        try (storage) {
+            assertEquals(bitcoin, storage.getAsset("BTC"), "Storage should contain bitcoin");
+
+            storage.setUpdateInterval(0);
+            storage.startRefresher(10);
+            refreshing.await();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(1), () -> assertEquals(bitcoin, storage.getAsset("BTC"),
+                "Current snapshot should be served while a refresh is running"));
+
+            release.countDown();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                while (storage.getEpoch() < 2) {
+                    Thread.sleep(10);
+                }
+            });
+
+            assertEquals(ethereum, storage.getAsset("ETH"), "Refreshed snapshot should be swapped in");
+            assertTrue(storage.getLastRefreshDurationMillis() >= 0, "Refresh duration should be recorded");
+            assertTrue(storage.getStalenessMillis() >= 0, "Staleness should be reported");
+        }
+    }
+
+    @Test
+    void testFailedBackgroundRefreshKeepsSnapshot() throws Exception {
+        when(serviceMock.getAssets()).thenReturn(bitcoinSet).thenThrow(AssetServiceException.class);
+
+        try (storage) {
+            assertEquals(bitcoin, storage.getAsset("BTC"), "Storage should contain bitcoin");
+
+            storage.setUpdateInterval(0);
+            storage.startRefresher(10);
+
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                while (storage.getRefreshFailures() == 0) {
+                    Thread.sleep(10);
+                }
+            });
+
+            assertEquals(bitcoin, storage.getAsset("BTC"), "Previous snapshot should survive a failed refresh");
+            verify(serviceMock, atLeast(2)).getAssets();
+        }
+    }
+
+    @Test
+    void testThunderingHerdTriggersSingleRefresh() throws Exception {
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CountDownLatch served = new CountDownLatch(HERD_SIZE - 1);
+
+        when(serviceMock.getAssets()).thenAnswer(invocation -> {
+            if (upstreamCalls.incrementAndGet() == 1) {
+                Thread.sleep(100);
+                return bitcoinSet;
+            }
+
+            served.await();
+            return Set.of(bitcoin, ethereum);
+        });
+
+        assertEquals(HERD_SIZE, runHerd(null), "Every thread should get bitcoin from the first load");
+        assertEquals(1, upstreamCalls.get(), "Cold herd should share one upstream call");
+
+        storage.setUpdateInterval(0);
+
+        assertEquals(HERD_SIZE, runHerd(served), "Stale snapshot should be served during the refresh");
+        assertEquals(2, upstreamCalls.get(), "Stale herd should share one upstream call");
+    }
+
+    private int runHerd(CountDownLatch served) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger successes = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < HERD_SIZE; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+
+                    if (bitcoin.equals(storage.getAsset("BTC"))) {
+                        successes.incrementAndGet();
+                    }
+                } catch (InterruptedException | AssetStorageException e) {
+                    //
+                } finally {
+                    if (served != null) {
+                        served.countDown();
+                    }
+                }
+            });
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        return successes.get();
+    }
 }
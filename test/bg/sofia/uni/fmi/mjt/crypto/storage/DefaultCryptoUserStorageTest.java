@@ -4,34 +4,134 @@ import bg.sofia.uni.fmi.mjt.crypto.exception.NegativeValueException;
 import bg.sofia.uni.fmi.mjt.crypto.exception.UserAlreadyExistsException;
 import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
 import bg.sofia.uni.fmi.mjt.crypto.user.DefaultCryptoUser;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DefaultCryptoUserStorageTest {
     private static final String TEST_USERNAME = "username";
     private static final String TEST_PASSWORD = "password";
     private static final CryptoUser TEST_USER = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+    private static final int WRITER_THREADS = 16;
+    private static final int UPDATES_PER_THREAD = 50;
+    private static final int LARGE_USER_COUNT = 1_000_000;
+    private static final int MEASURED_UPDATES = 200;
+    private static final int BACKUP_USER_COUNT = 200_000;
+    private static final long MAX_BACKUP_PAUSE_NANOS = 100_000_000;
 
     @TempDir
     Path tempDir;
 
-    private CryptoUserStorage userStorage;
+    private DefaultCryptoUserStorage userStorage;
+    private Path snapshotFile;
+    private Path logFile;
 
     @BeforeEach
     void setUp() {
-        Path tempFile = tempDir.resolve("users.txt");
-        userStorage = new DefaultCryptoUserStorage(tempFile.toString());
+        snapshotFile = tempDir.resolve("users.txt");
+        logFile = tempDir.resolve("users.txt.log");
+        userStorage = new DefaultCryptoUserStorage(snapshotFile.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        userStorage.close();
+    }
+
+    private long forcesForConcurrentUpdates(long batchWindowNanos) throws Exception {
+        Path file = tempDir.resolve("users-" + batchWindowNanos + ".txt");
+
+        try (DefaultCryptoUserStorage storage = new DefaultCryptoUserStorage(file.toString(), Integer.MAX_VALUE,
+            batchWindowNanos)) {
+            Thread[] threads = new Thread[WRITER_THREADS];
+
+            for (int i = 0; i < WRITER_THREADS; i++) {
+                CryptoUser user = new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD);
+                storage.add(user);
+
+                threads[i] = new Thread(() -> {
+                    for (int j = 0; j < UPDATES_PER_THREAD; j++) {
+                        storage.update(user);
+                    }
+                });
+            }
+
+            long forcesBefore = storage.getForceCount();
+
+            for (Thread thread : threads) {
+                thread.start();
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertEquals(WRITER_THREADS * (UPDATES_PER_THREAD + 1), Files.readAllLines(file.resolveSibling(
+                file.getFileName() + ".log")).size(), "Every acknowledged update should be in the log");
+
+            return storage.getForceCount() - forcesBefore;
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long bytesPerUpdate(DefaultCryptoUserStorage storage) throws Exception {
+        CryptoUser user = storage.get(TEST_USERNAME + 0);
+
+        if (user == null) {
+            user = new DefaultCryptoUser(TEST_USERNAME + 0, TEST_PASSWORD);
+            storage.add(user);
+        }
+
+        for (int i = 0; i < MEASURED_UPDATES; i++) {
+            user.getWallet().deposit(1);
+            storage.update(user);
+        }
+
+        long before = allocatedBytes();
+
+        for (int i = 0; i < MEASURED_UPDATES; i++) {
+            user.getWallet().deposit(1);
+            storage.update(user);
+        }
+
+        return (allocatedBytes() - before) / MEASURED_UPDATES;
+    }
+
+    private DefaultCryptoUserStorage reopen() throws IOException {
+        userStorage.close();
+        userStorage = new DefaultCryptoUserStorage(snapshotFile.toString());
+
+        return userStorage;
     }
 
     @Test
@@ -85,6 +185,7 @@ class DefaultCryptoUserStorageTest {
 
         Files.writeString(tempFile, TEST_USER.toString());
 
+        userStorage.close();
         userStorage = new DefaultCryptoUserStorage(tempFile.toString());
 
         CryptoUser user = userStorage.get(TEST_USERNAME);
@@ -93,4 +194,291 @@ class DefaultCryptoUserStorageTest {
         assertEquals(TEST_USERNAME, user.getUsername());
         assertEquals(TEST_PASSWORD, user.getPassword());
     }
+
+    @Test
+    void testUpdateAppendsSingleRecord() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            userStorage.add(new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD));
+        }
+
+        userStorage.compact();
+        String snapshot = Files.readString(snapshotFile);
+
+        CryptoUser user = userStorage.get(TEST_USERNAME + 0);
+        user.getWallet().deposit(200);
+        userStorage.update(user);
+
+        assertEquals(snapshot, Files.readString(snapshotFile), "Snapshot should not be rewritten on update");
+        assertEquals(List.of(user.toString()), UserLogWriter.recover(logFile), "Update should append one record");
+    }
+
+    @Test
+    void testLogIsReplayedOnLoad() throws Exception {
+        userStorage.add(new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD));
+
+        CryptoUser user = userStorage.get(TEST_USERNAME);
+        user.getWallet().deposit(200);
+        userStorage.update(user);
+
+        CryptoUser replayedUser = reopen().get(TEST_USERNAME);
+
+        assertNotNull(replayedUser, "User should be replayed from the log");
+        assertEquals(200.0, replayedUser.getWallet().getBalance(), 0.00001, "Latest record should win");
+    }
+
+    @Test
+    void testCompactFoldsLogIntoSnapshot() throws Exception {
+        userStorage.add(new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD));
+        userStorage.get(TEST_USERNAME).getWallet().deposit(200);
+        userStorage.update(userStorage.get(TEST_USERNAME));
+
+        userStorage.compact();
+
+        assertEquals(0, Files.size(logFile), "Log should be empty after compaction");
+        assertFalse(Files.exists(tempDir.resolve("users.txt.log.old")), "Rotated log should be deleted");
+        assertEquals(List.of(userStorage.get(TEST_USERNAME).toString()), Files.readAllLines(snapshotFile),
+            "Snapshot should contain the latest state");
+        assertEquals(200.0, reopen().get(TEST_USERNAME).getWallet().getBalance(), 0.00001,
+            "User should be loaded from the snapshot");
+    }
+
+    @Test
+    void testTornLastRecordIsIgnored() throws Exception {
+        userStorage.add(TEST_USER);
+        userStorage.close();
+
+        Files.writeString(logFile, "other;pass", StandardOpenOption.APPEND);
+
+        assertNotNull(reopen().get(TEST_USERNAME), "Complete records should be replayed");
+        assertNull(userStorage.get("other"), "Torn record should be ignored");
+
+        userStorage.add(new DefaultCryptoUser("carol", TEST_PASSWORD));
+
+        assertNotNull(reopen().get("carol"), "Record written after recovery should survive another restart");
+        assertNotNull(userStorage.get(TEST_USERNAME), "Earlier records should survive another restart");
+    }
+
+    @Test
+    void testTornRecordThatStillParsesIsIgnored() throws Exception {
+        userStorage.add(TEST_USER);
+        userStorage.close();
+
+        ByteBuffer record = UserLogWriter.encode("dave;pass;1000.5;BTC=0.1;BTC=19.0");
+        byte[] torn = Arrays.copyOf(record.array(), record.remaining() - 1);
+        Files.write(logFile, torn, StandardOpenOption.APPEND);
+
+        assertNull(reopen().get("dave"), "Record without its terminator should be ignored");
+
+        userStorage.add(new DefaultCryptoUser("carol", TEST_PASSWORD));
+
+        assertNotNull(reopen().get("carol"), "Record written after recovery should survive another restart");
+    }
+
+    @Test
+    void testRecordWithBadChecksumIsIgnoredAtTail() throws Exception {
+        userStorage.add(TEST_USER);
+        userStorage.close();
+
+        byte[] record = UserLogWriter.encode("dave;pass;1000.5;;").array();
+        record[record.length - 3] = '9';
+        Files.write(logFile, record, StandardOpenOption.APPEND);
+
+        assertNull(reopen().get("dave"), "Record with a bad checksum should be ignored");
+        assertNotNull(userStorage.get(TEST_USERNAME), "Complete records should be replayed");
+    }
+
+    @Test
+    void testCorruptRecordBeforeValidRecordsFailsLoad() throws Exception {
+        userStorage.add(TEST_USER);
+        userStorage.close();
+
+        byte[] record = UserLogWriter.encode("dave;pass;1000.5;;").array();
+        record[record.length - 3] = '9';
+        Files.write(logFile, record, StandardOpenOption.APPEND);
+        Files.write(logFile, UserLogWriter.encode("carol;pass;0.0;;").array(), StandardOpenOption.APPEND);
+
+        assertThrows(RuntimeException.class, () -> new DefaultCryptoUserStorage(snapshotFile.toString()),
+            "Corruption in the middle of the log should not be skipped silently");
+    }
+
+    @Test
+    void testLogIsCompactedInBackground() throws Exception {
+        userStorage.close();
+        userStorage = new DefaultCryptoUserStorage(snapshotFile.toString(), 10);
+
+        for (int i = 0; i < 10; i++) {
+            userStorage.add(new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD));
+        }
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while (!Files.exists(snapshotFile) || Files.readAllLines(snapshotFile).size() < 10) {
+                Thread.sleep(10);
+            }
+        });
+
+        assertEquals(0, Files.size(logFile), "Log should be folded into the snapshot");
+    }
+
+    @Test
+    void testUpdateIsDurableWhenItReturns() throws Exception {
+        long forcesBefore = userStorage.getForceCount();
+
+        userStorage.add(new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD));
+
+        assertEquals(forcesBefore + 1, userStorage.getForceCount(), "Record should be forced before returning");
+        assertEquals(1, Files.readAllLines(logFile).size(), "Record should be written before returning");
+    }
+
+    @Test
+    void testConcurrentUpdatesAreGroupCommitted() throws Exception {
+        long[] batchWindowsNanos = {0, 200_000, 1_000_000, 5_000_000};
+        int updates = WRITER_THREADS * UPDATES_PER_THREAD;
+
+        for (long batchWindowNanos : batchWindowsNanos) {
+            long forces = forcesForConcurrentUpdates(batchWindowNanos);
+
+            assertTrue(forces <= updates, "Batch window " + batchWindowNanos + "ns should not add forces");
+        }
+    }
+
+    @Test
+    void testPipelinedUpdatesShareOneBatch() throws Exception {
+        Path file = tempDir.resolve("pipelined-users.txt");
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+
+        try (DefaultCryptoUserStorage storage = new DefaultCryptoUserStorage(file.toString(), Integer.MAX_VALUE,
+            Duration.ofMillis(50).toNanos())) {
+            storage.add(user);
+
+            CompletableFuture<?>[] durable = new CompletableFuture<?>[UPDATES_PER_THREAD];
+
+            for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                durable[i] = storage.updateAsync(user);
+            }
+
+            CompletableFuture.allOf(durable).join();
+
+            assertTrue(storage.getLargestBatchSize() > 1,
+                "Updates appended within one batch window should be forced together");
+        }
+    }
+
+    @Test
+    void testUpdateAsyncReturnsBeforeTheLogIsForced() throws Exception {
+        Path file = tempDir.resolve("async-users.txt");
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+
+        try (DefaultCryptoUserStorage storage = new DefaultCryptoUserStorage(file.toString(), Integer.MAX_VALUE,
+            Duration.ofSeconds(1).toNanos())) {
+            storage.add(user);
+
+            CompletableFuture<Void> durable = storage.updateAsync(user);
+
+            assertFalse(durable.isDone(), "Update should not wait for the batch window to elapse");
+            assertTimeoutPreemptively(Duration.ofSeconds(5), durable::join);
+        }
+    }
+
+    @Test
+    void testCompactionReusesSerializedUsers() throws Exception {
+        AtomicInteger serializations = new AtomicInteger();
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD) {
+            @Override
+            public String toString() {
+                serializations.incrementAndGet();
+                return super.toString();
+            }
+        };
+
+        userStorage.add(user);
+        userStorage.compact();
+        userStorage.compact();
+
+        assertEquals(1, serializations.get(), "Unchanged users should not be serialized again");
+    }
+
+    @Test
+    void testUpdateCostDoesNotDependOnUserCount() throws Exception {
+        Path largeFile = tempDir.resolve("large-users.txt");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(largeFile)) {
+            for (int i = 0; i < LARGE_USER_COUNT; i++) {
+                writer.write(TEST_USERNAME + i + ";" + TEST_PASSWORD + ";0.0;;");
+                writer.newLine();
+            }
+        }
+
+        long smallBytes = bytesPerUpdate(userStorage);
+
+        try (DefaultCryptoUserStorage largeStorage = new DefaultCryptoUserStorage(largeFile.toString())) {
+            long largeBytes = bytesPerUpdate(largeStorage);
+
+            assertTrue(largeBytes <= smallBytes + 128,
+                "Update with " + LARGE_USER_COUNT + " users should cost the same as with one: " + largeBytes
+                    + " vs " + smallBytes + " bytes");
+        }
+    }
+
+    @Test
+    void testBackupIsPointInTimeAndRestorable() throws Exception {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+        userStorage.add(user);
+        user.getWallet().deposit(100);
+        userStorage.update(user);
+
+        Path backupFile = tempDir.resolve("backup.txt");
+        CompletableFuture<Void> backup = userStorage.backup(backupFile.toString());
+
+        user.getWallet().deposit(100);
+        userStorage.update(user);
+        backup.join();
+
+        try (DefaultCryptoUserStorage restored = new DefaultCryptoUserStorage(backupFile.toString())) {
+            assertEquals(100.0, restored.get(TEST_USERNAME).getWallet().getBalance(), 0.00001,
+                "Backup should not see changes made after it started");
+        }
+    }
+
+    @Test
+    void testBackupDoesNotPauseTrading() throws Exception {
+        Path largeFile = tempDir.resolve("backup-users.txt");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(largeFile)) {
+            for (int i = 0; i < BACKUP_USER_COUNT; i++) {
+                writer.write(TEST_USERNAME + i + ";" + TEST_PASSWORD + ";0.0;;");
+                writer.newLine();
+            }
+        }
+
+        Path backupFile = tempDir.resolve("backup.txt");
+
+        try (DefaultCryptoUserStorage largeStorage = new DefaultCryptoUserStorage(largeFile.toString())) {
+            AtomicBoolean trading = new AtomicBoolean(true);
+            CryptoUser trader = largeStorage.get(TEST_USERNAME + 0);
+
+            Thread thread = new Thread(() -> {
+                while (trading.get()) {
+                    assertDoesNotThrow(() -> trader.getWallet().deposit(1));
+                    largeStorage.update(trader);
+                }
+            });
+
+            thread.start();
+            CompletableFuture<Void> backup = largeStorage.backup(backupFile.toString());
+
+            backup.join();
+            trading.set(false);
+            thread.join();
+
+            assertTrue(largeStorage.getLastBackupPauseNanos() < MAX_BACKUP_PAUSE_NANOS,
+                "Writers should only be paused while the users are captured: "
+                    + largeStorage.getLastBackupPauseNanos() + "ns");
+        }
+
+        try (DefaultCryptoUserStorage restored = new DefaultCryptoUserStorage(backupFile.toString())) {
+            for (int i = 0; i < BACKUP_USER_COUNT; i += 1000) {
+                assertNotNull(restored.get(TEST_USERNAME + i), "Every user should be restored");
+            }
+        }
+    }
 }
@@ -0,0 +1,177 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import bg.sofia.uni.fmi.mjt.crypto.exception.UserAlreadyExistsException;
+import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
+import bg.sofia.uni.fmi.mjt.crypto.user.DefaultCryptoUser;
+import bg.sofia.uni.fmi.mjt.crypto.wallet.CryptoWallet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdbcCryptoUserStorageTest {
+    private static final double DELTA = 0.000001;
+    private static final String TEST_USERNAME = "username";
+    private static final String TEST_PASSWORD = "password";
+    private static final int POSITION_COUNT = 50;
+
+    @TempDir
+    Path tempDir;
+
+    private String url;
+    private JdbcCryptoUserStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        url = "jdbc:h2:" + tempDir.resolve("users");
+        userStorage = new JdbcCryptoUserStorage(url);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        userStorage.close();
+    }
+
+    private JdbcCryptoUserStorage reopen() throws IOException {
+        userStorage.close();
+        userStorage = new JdbcCryptoUserStorage(url);
+
+        return userStorage;
+    }
+
+    @Test
+    void testAddAndGetUser() {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+
+        assertDoesNotThrow(() -> userStorage.add(user), "New user should be added");
+        assertSame(user, userStorage.get(TEST_USERNAME), "Added user should be returned");
+        assertNull(userStorage.get("any"), "User should not exist");
+    }
+
+    @Test
+    void testAddExistingUser() throws Exception {
+        userStorage.add(new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD));
+
+        assertThrows(UserAlreadyExistsException.class,
+            () -> reopen().add(new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD)),
+            "UserAlreadyExistsException expected when username is already taken");
+    }
+
+    @Test
+    void testUpdatedUserIsLoadedFromDatabase() throws Exception {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+        userStorage.add(user);
+
+        user.getWallet().deposit(1000);
+        user.getWallet().buy("BTC", 500, 50000);
+        user.getWallet().buy("ETH", 200, 2000);
+        userStorage.update(user);
+
+        user.getWallet().sell("ETH", 2500);
+        userStorage.update(user);
+
+        CryptoUser loadedUser = reopen().get(TEST_USERNAME);
+
+        assertNotNull(loadedUser, "User should be loaded");
+        assertEquals(TEST_PASSWORD, loadedUser.getPassword(), "Passwords should match");
+        assertEquals(550, loadedUser.getWallet().getBalance(), DELTA, "Balance should be persisted");
+        assertEquals(List.of("BTC"), loadedUser.getWallet().getInvestments(), "Sold position should be deleted");
+        assertEquals(0.01, loadedUser.getWallet().getQuantity("BTC"), DELTA, "Quantity should be persisted");
+        assertEquals(50000, loadedUser.getWallet().getEntryPrice("BTC"), DELTA, "Entry price should be persisted");
+    }
+
+    @Test
+    void testUpdateWritesOnlyChangedPositions() throws Exception {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+        user.getWallet().deposit(POSITION_COUNT * 2);
+
+        for (int i = 0; i < POSITION_COUNT; i++) {
+            user.getWallet().buy("ASSET" + i, 1, 1);
+        }
+
+        userStorage.add(user);
+        long written = userStorage.getWrittenPositionCount();
+
+        user.getWallet().deposit(10);
+        userStorage.update(user);
+
+        assertEquals(written, userStorage.getWrittenPositionCount(), "Deposit should not touch positions");
+
+        user.getWallet().buy("ASSET0", 1, 1);
+        userStorage.update(user);
+
+        assertEquals(written + 1, userStorage.getWrittenPositionCount(), "Only the changed position should be written");
+        assertEquals(2, reopen().get(TEST_USERNAME).getWallet().getQuantity("ASSET0"), DELTA,
+            "Changed position should be persisted");
+    }
+
+    @Test
+    void testUpdateInsertsNewPositionsAlongsideChangedOnes() throws Exception {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+        user.getWallet().deposit(100);
+        user.getWallet().buy("BTC", 10, 1);
+        userStorage.add(user);
+        long written = userStorage.getWrittenPositionCount();
+
+        user.getWallet().buy("BTC", 10, 1);
+        user.getWallet().buy("ETH", 20, 2);
+        userStorage.update(user);
+
+        assertEquals(written + 2, userStorage.getWrittenPositionCount(),
+            "New position should be inserted and changed position updated");
+
+        CryptoUser loadedUser = reopen().get(TEST_USERNAME);
+
+        assertEquals(20, loadedUser.getWallet().getQuantity("BTC"), DELTA, "Changed position should be persisted");
+        assertEquals(10, loadedUser.getWallet().getQuantity("ETH"), DELTA, "New position should be persisted");
+    }
+
+    @Test
+    void testGetHolders() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            CryptoUser user = new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD);
+            userStorage.add(user);
+
+            user.getWallet().deposit(10);
+            user.getWallet().buy(i % 2 == 0 ? "BTC" : "ETH", 5, 1);
+            userStorage.update(user);
+        }
+
+        List<String> holders = reopen().getHolders("BTC");
+
+        assertEquals(5, holders.size(), "Only BTC holders should be returned");
+        assertTrue(holders.contains(TEST_USERNAME + 0), "BTC holder should be returned");
+    }
+
+    @Test
+    void testBackupIsRestorableIntoFileStorage() throws Exception {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+        user.getWallet().deposit(100);
+        user.getWallet().buy("BTC", 40, 20);
+        userStorage.add(user);
+        userStorage.add(new DefaultCryptoUser(TEST_USERNAME + 1, TEST_PASSWORD));
+
+        Path backupFile = tempDir.resolve("backup.csv");
+        userStorage.backup(backupFile.toString()).join();
+
+        try (DefaultCryptoUserStorage restored = new DefaultCryptoUserStorage(backupFile.toString())) {
+            CryptoWallet wallet = restored.get(TEST_USERNAME).getWallet();
+
+            assertEquals(60, wallet.getBalance(), DELTA, "Balance should be backed up");
+            assertEquals(2, wallet.getQuantity("BTC"), DELTA, "Positions should be backed up");
+            assertNotNull(restored.get(TEST_USERNAME + 1), "Users without positions should be backed up");
+        }
+    }
+}
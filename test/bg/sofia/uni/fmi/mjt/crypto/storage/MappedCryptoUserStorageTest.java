@@ -0,0 +1,466 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import bg.sofia.uni.fmi.mjt.crypto.exception.UserAlreadyExistsException;
+import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
+import bg.sofia.uni.fmi.mjt.crypto.user.DefaultCryptoUser;
+import bg.sofia.uni.fmi.mjt.crypto.wallet.CryptoWallet;
+import bg.sofia.uni.fmi.mjt.crypto.wallet.DefaultCryptoWallet;
+import bg.sofia.uni.fmi.mjt.crypto.wallet.WalletCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedCryptoUserStorageTest {
+    private static final double DELTA = 0.000001;
+    private static final String TEST_USERNAME = "username";
+    private static final String TEST_PASSWORD = "password";
+    private static final int INITIAL_CAPACITY = 4;
+    private static final long MAX_RESIDENT_BYTES = 16 * 1024;
+    private static final int FOOTPRINT_USERS = 100_000;
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private MappedCryptoUserStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("users.dat");
+        userStorage = new MappedCryptoUserStorage(file.toString(), INITIAL_CAPACITY);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        userStorage.close();
+    }
+
+    private MappedCryptoUserStorage reopen() throws IOException {
+        userStorage.close();
+        userStorage = new MappedCryptoUserStorage(file.toString(), INITIAL_CAPACITY);
+
+        return userStorage;
+    }
+
+    @Test
+    void testAddAndGetUser() {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+
+        assertDoesNotThrow(() -> userStorage.add(user), "New user should be added");
+        assertSame(user, userStorage.get(TEST_USERNAME), "Added user should be returned");
+        assertNull(userStorage.get("any"), "User should not exist");
+    }
+
+    @Test
+    void testAddExistingUser() throws UserAlreadyExistsException {
+        userStorage.add(new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD));
+
+        assertThrows(UserAlreadyExistsException.class,
+            () -> userStorage.add(new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD)),
+            "UserAlreadyExistsException expected when username is already taken");
+    }
+
+    @Test
+    void testAddUserWithTooLongUsername() {
+        assertThrows(IllegalArgumentException.class,
+            () -> userStorage.add(new DefaultCryptoUser("u".repeat(64), TEST_PASSWORD)),
+            "IllegalArgumentException expected when username does not fit in a slot");
+    }
+
+    @Test
+    void testUpdatedUserIsLoadedFromMapping() throws Exception {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+        userStorage.add(user);
+
+        user.getWallet().deposit(1000);
+        user.getWallet().buy("BTC", 500, 50000);
+        userStorage.update(user);
+
+        CryptoUser loadedUser = reopen().get(TEST_USERNAME);
+
+        assertNotNull(loadedUser, "User should be loaded");
+        assertEquals(TEST_PASSWORD, loadedUser.getPassword(), "Passwords should match");
+        assertEquals(user.getWallet().toString(), loadedUser.getWallet().toString(), "Wallets should match");
+    }
+
+    @Test
+    void testStorageGrowsBeyondInitialCapacity() throws Exception {
+        int userCount = INITIAL_CAPACITY * 64;
+
+        for (int i = 0; i < userCount; i++) {
+            CryptoUser user = new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD);
+            userStorage.add(user);
+
+            user.getWallet().deposit(i);
+            user.getWallet().buy("ASSET" + i, i / 2.0, 10);
+            userStorage.update(user);
+        }
+
+        reopen();
+
+        assertEquals(userCount, userStorage.size(), "All users should be indexed");
+
+        for (int i = 0; i < userCount; i++) {
+            CryptoUser user = userStorage.get(TEST_USERNAME + i);
+
+            assertEquals(i / 2.0, user.getWallet().getBalance(), DELTA, "Balance should be persisted");
+            assertEquals(1, user.getWallet().getInvestments().size(), "Investments should be persisted");
+        }
+    }
+
+    @Test
+    void testUsersAcrossSmallSegmentsArePersisted() throws Exception {
+        Path segmentedFile = tempDir.resolve("segmented.dat");
+        int segmentSize = 1024;
+        int userCount = 100;
+
+        try (MappedCryptoUserStorage segmentedStorage = new MappedCryptoUserStorage(segmentedFile.toString(),
+            INITIAL_CAPACITY, MAX_RESIDENT_BYTES, segmentSize)) {
+            for (int i = 0; i < userCount; i++) {
+                CryptoUser user = new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD + i);
+                user.getWallet().deposit(i);
+                user.getWallet().buy("ASSET" + i, i / 2.0, 10);
+                segmentedStorage.add(user);
+            }
+        }
+
+        try (MappedCryptoUserStorage segmentedStorage = new MappedCryptoUserStorage(segmentedFile.toString(),
+            INITIAL_CAPACITY, MAX_RESIDENT_BYTES, segmentSize)) {
+            assertEquals(userCount, segmentedStorage.size(), "All users should be indexed");
+
+            for (int i = 0; i < userCount; i++) {
+                CryptoUser user = segmentedStorage.get(TEST_USERNAME + i);
+
+                assertEquals(TEST_PASSWORD + i, user.getPassword(), "Slots straddling segments should be read back");
+                assertEquals(i / 2.0, user.getWallet().getBalance(), DELTA, "Balance should be persisted");
+            }
+        }
+    }
+
+    @Test
+    void testGrowingWalletIsMovedWithinOverflowArea() throws Exception {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+        userStorage.add(user);
+        user.getWallet().deposit(1000);
+
+        for (int i = 0; i < 50; i++) {
+            user.getWallet().buy("ASSET" + i, 10, 1);
+            userStorage.update(user);
+        }
+
+        assertEquals(50, reopen().get(TEST_USERNAME).getWallet().getInvestments().size(),
+            "Every investment should be persisted");
+    }
+
+    @Test
+    void testConcurrentWritersAndReadersOfDifferentUsers() throws Exception {
+        int threadCount = 8;
+        int updates = 200;
+        Thread[] threads = new Thread[threadCount];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (int i = 0; i < threadCount; i++) {
+            String username = TEST_USERNAME + i;
+
+            threads[i] = new Thread(() -> {
+                try {
+                    CryptoUser user = new DefaultCryptoUser(username, TEST_PASSWORD);
+                    userStorage.add(user);
+
+                    for (int j = 0; j < updates; j++) {
+                        user.getWallet().deposit(1);
+                        user.getWallet().buy("ASSET" + j, 0.5, 1);
+                        userStorage.update(user);
+
+                        assertEquals(j + 1, userStorage.get(username).getWallet().getInvestments().size(),
+                            "Readers should see the latest write of their user");
+                    }
+                } catch (Throwable throwable) {
+                    failure.compareAndSet(null, throwable);
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get(), () -> "Concurrent access failed: " + failure.get());
+
+        MappedCryptoUserStorage reopened = reopen();
+
+        for (int i = 0; i < threadCount; i++) {
+            CryptoWallet wallet = reopened.get(TEST_USERNAME + i).getWallet();
+
+            assertEquals(updates * 0.5, wallet.getBalance(), DELTA, "Every update should be persisted");
+            assertEquals(updates, wallet.getInvestments().size(), "Every investment should be persisted");
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedUsersAreEvictedWithinBudget() throws Exception {
+        MappedCryptoUserStorage lazyStorage = new MappedCryptoUserStorage(tempDir.resolve("lazy.dat").toString(),
+            INITIAL_CAPACITY, MAX_RESIDENT_BYTES);
+        int userCount = 1000;
+
+        try (lazyStorage) {
+            for (int i = 0; i < userCount; i++) {
+                CryptoUser user = new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD);
+                lazyStorage.add(user);
+
+                user.getWallet().deposit(i);
+                lazyStorage.update(user);
+            }
+
+            assertTrue(lazyStorage.getResidentBytes() <= MAX_RESIDENT_BYTES, "Resident users should fit the budget");
+            assertTrue(lazyStorage.getResidentCount() < userCount,
+                "Least recently used users should be evicted once over budget");
+
+            CryptoUser active = lazyStorage.get(TEST_USERNAME + (userCount - 1));
+
+            for (int i = 0; i < userCount; i++) {
+                assertEquals(i, lazyStorage.get(TEST_USERNAME + i).getWallet().getBalance(), DELTA,
+                    "Evicted user should be reloaded from the mapping");
+            }
+
+            assertNotSame(active, lazyStorage.get(TEST_USERNAME + (userCount - 1)),
+                "Least recently used user should have been evicted");
+        }
+    }
+
+    @Test
+    void testLazyStorageKeepsOnlyIndexResident() throws Exception {
+        Path residentFile = tempDir.resolve("resident.csv");
+        Path lazyFile = tempDir.resolve("lazy.dat");
+
+        populateResident(residentFile);
+        populateLazy(lazyFile);
+
+        long residentFootprint = usedHeapWithResident(residentFile) - usedHeap();
+        long lazyFootprint = usedHeapWithLazy(lazyFile) - usedHeap();
+
+        assertTrue(lazyFootprint * 10 < residentFootprint,
+            "Lazy storage should use a fraction of the heap: " + lazyFootprint + " vs " + residentFootprint);
+    }
+
+    private static void populateResident(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < FOOTPRINT_USERS; i++) {
+                writer.write(TEST_USERNAME + i + ";" + TEST_PASSWORD + ";100.0;BTC=0.5,ETH=2.0;BTC=20000.0,ETH=1500.0");
+                writer.newLine();
+            }
+        }
+    }
+
+    private static void populateLazy(Path file) throws Exception {
+        try (MappedCryptoUserStorage lazyStorage = new MappedCryptoUserStorage(file.toString(), FOOTPRINT_USERS,
+            MAX_RESIDENT_BYTES)) {
+            for (int i = 0; i < FOOTPRINT_USERS; i++) {
+                CryptoUser user = new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD);
+                user.getWallet().deposit(13100);
+                user.getWallet().buy("BTC", 10000, 20000);
+                user.getWallet().buy("ETH", 3000, 1500);
+                lazyStorage.add(user);
+            }
+        }
+    }
+
+    private static long usedHeapWithResident(Path file) throws IOException {
+        try (DefaultCryptoUserStorage residentStorage = new DefaultCryptoUserStorage(file.toString())) {
+            assertNotNull(residentStorage.get(TEST_USERNAME + 0), "Users should be loaded");
+
+            return usedHeap();
+        }
+    }
+
+    private static long usedHeapWithLazy(Path file) throws IOException {
+        try (MappedCryptoUserStorage lazyStorage = new MappedCryptoUserStorage(file.toString(), MAX_RESIDENT_BYTES)) {
+            for (int i = 0; i < FOOTPRINT_USERS; i += 100) {
+                assertNotNull(lazyStorage.get(TEST_USERNAME + i), "User should be loaded on access");
+            }
+
+            assertEquals(FOOTPRINT_USERS, lazyStorage.size(), "All users should be indexed");
+
+            return usedHeap();
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Test
+    void testLegacyTextWalletsAreMigrated() throws Exception {
+        Path legacyFile = tempDir.resolve("legacy.dat");
+        byte[] username = TEST_USERNAME.getBytes(StandardCharsets.UTF_8);
+        byte[] password = TEST_PASSWORD.getBytes(StandardCharsets.UTF_8);
+        byte[] maps = "BTC=0.5;BTC=20000.0".getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer slots = ByteBuffer.allocate(64 + 256);
+        slots.putInt(0, 0x43555352).putInt(4, 1).putInt(8, 1).putLong(16, 64);
+        slots.putInt(64, TEST_USERNAME.hashCode());
+        slots.put(64 + 4, (byte) username.length).put(64 + 5, username);
+        slots.put(64 + 68, (byte) password.length).put(64 + 69, password);
+        slots.putDouble(64 + 200, 100.0).putLong(64 + 208, 0).putInt(64 + 216, maps.length).putInt(64 + 220, 64);
+
+        try (FileChannel channel = FileChannel.open(legacyFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(slots);
+        }
+
+        Files.write(Path.of(legacyFile + ".overflow"), maps);
+
+        try (MappedCryptoUserStorage legacyStorage = new MappedCryptoUserStorage(legacyFile.toString())) {
+            CryptoUser user = legacyStorage.get(TEST_USERNAME);
+
+            assertEquals(100.0, user.getWallet().getBalance(), DELTA, "Balance should be migrated");
+            assertEquals(0.5, user.getWallet().getQuantity("BTC"), DELTA, "Quantity should be migrated");
+            assertEquals(20000.0, user.getWallet().getEntryPrice("BTC"), DELTA, "Entry price should be migrated");
+        }
+
+        try (MappedCryptoUserStorage migratedStorage = new MappedCryptoUserStorage(legacyFile.toString())) {
+            assertEquals(0.5, migratedStorage.get(TEST_USERNAME).getWallet().getQuantity("BTC"), DELTA,
+                "Migrated wallet should be read in the binary format");
+        }
+    }
+
+    @Test
+    void testInterruptedMigrationResumesFromUnmigratedSlots() throws Exception {
+        Path legacyFile = tempDir.resolve("interrupted.dat");
+        CryptoWallet migrated = new DefaultCryptoWallet();
+        migrated.deposit(13100);
+        migrated.buy("ETH", 3000, 1500);
+        byte[] binary = WalletCodec.encode(migrated);
+        byte[] text = "BTC=0.5;BTC=20000.0".getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer slots = ByteBuffer.allocate(64 + 2 * 256);
+        slots.putInt(0, 0x43555352).putInt(4, 1).putInt(8, 2).putLong(16, 256);
+        putLegacySlot(slots, 0, TEST_USERNAME + 0, 10100.0, 128, binary.length, 64);
+        slots.put(64 + 224, (byte) 1);
+        putLegacySlot(slots, 1, TEST_USERNAME + 1, 100.0, 0, text.length, 64);
+
+        ByteBuffer overflow = ByteBuffer.allocate(256);
+        overflow.put(0, text).put(128, binary);
+
+        writeLegacyFiles(legacyFile, slots, overflow);
+
+        try (MappedCryptoUserStorage legacyStorage = new MappedCryptoUserStorage(legacyFile.toString())) {
+            CryptoWallet first = legacyStorage.get(TEST_USERNAME + 0).getWallet();
+            CryptoWallet second = legacyStorage.get(TEST_USERNAME + 1).getWallet();
+
+            assertEquals(migrated.toString(), first.toString(), "Migrated slot should not be decoded as text");
+            assertEquals(100.0, second.getBalance(), DELTA, "Remaining slot should be migrated");
+            assertEquals(0.5, second.getQuantity("BTC"), DELTA, "Remaining slot should be migrated");
+        }
+    }
+
+    @Test
+    void testLegacyBinaryWalletsAreMigrated() throws Exception {
+        Path legacyFile = tempDir.resolve("binary.dat");
+        CryptoWallet wallet = new DefaultCryptoWallet();
+        wallet.deposit(1000);
+        wallet.buy("BTC", 500, 50000);
+        byte[] binary = WalletCodec.encode(wallet);
+
+        ByteBuffer slots = ByteBuffer.allocate(64 + 256);
+        slots.putInt(0, 0x43555352).putInt(4, 2).putInt(8, 1).putLong(16, 64);
+        putLegacySlot(slots, 0, TEST_USERNAME, 500.0, 0, binary.length, 64);
+
+        writeLegacyFiles(legacyFile, slots, ByteBuffer.allocate(64).put(0, binary));
+
+        try (MappedCryptoUserStorage legacyStorage = new MappedCryptoUserStorage(legacyFile.toString())) {
+            CryptoUser user = legacyStorage.get(TEST_USERNAME);
+            user.getWallet().deposit(1);
+            legacyStorage.update(user);
+        }
+
+        try (MappedCryptoUserStorage migratedStorage = new MappedCryptoUserStorage(legacyFile.toString())) {
+            assertEquals(501.0, migratedStorage.get(TEST_USERNAME).getWallet().getBalance(), DELTA,
+                "Binary wallet should survive migration and a later update");
+        }
+    }
+
+    @Test
+    void testUpdateDoesNotOverwriteCommittedWallet() throws Exception {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+        user.getWallet().deposit(100);
+        userStorage.add(user);
+        long committed = ByteBuffer.wrap(Files.readAllBytes(file)).getLong(64 + 208);
+
+        user.getWallet().deposit(1);
+        userStorage.update(user);
+        long updated = ByteBuffer.wrap(Files.readAllBytes(file)).getLong(64 + 208);
+
+        ByteBuffer overflow = ByteBuffer.wrap(Files.readAllBytes(Path.of(file + ".overflow")));
+
+        assertNotEquals(committed, updated, "Update should be written to the inactive copy");
+        assertEquals(100.0, WalletCodec.decode(overflow.slice((int) committed, overflow.capacity() - (int) committed))
+            .getBalance(), DELTA, "Previously committed wallet should stay intact until the slot is switched");
+        assertEquals(101.0, reopen().get(TEST_USERNAME).getWallet().getBalance(), DELTA, "Update should be persisted");
+    }
+
+    private static void putLegacySlot(ByteBuffer slots, int slot, String username, double balance, long overflowOffset,
+                                      int length, int capacity) {
+        int offset = 64 + slot * 256;
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        byte[] password = TEST_PASSWORD.getBytes(StandardCharsets.UTF_8);
+
+        slots.putInt(offset, username.hashCode());
+        slots.put(offset + 4, (byte) name.length).put(offset + 5, name);
+        slots.put(offset + 68, (byte) password.length).put(offset + 69, password);
+        slots.putDouble(offset + 200, balance).putLong(offset + 208, overflowOffset);
+        slots.putInt(offset + 216, length).putInt(offset + 220, capacity);
+    }
+
+    private static void writeLegacyFiles(Path file, ByteBuffer slots, ByteBuffer overflow) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(slots);
+        }
+
+        Files.write(Path.of(file + ".overflow"), overflow.array());
+    }
+
+    @Test
+    void testBackupIsRestorableIntoFileStorage() throws Exception {
+        CryptoUser user = new DefaultCryptoUser(TEST_USERNAME, TEST_PASSWORD);
+        user.getWallet().deposit(100);
+        user.getWallet().buy("BTC", 40, 20);
+        userStorage.add(user);
+
+        Path backupFile = tempDir.resolve("backup.csv");
+        userStorage.backup(backupFile.toString()).join();
+
+        try (DefaultCryptoUserStorage restored = new DefaultCryptoUserStorage(backupFile.toString())) {
+            CryptoWallet wallet = restored.get(TEST_USERNAME).getWallet();
+
+            assertEquals(60, wallet.getBalance(), DELTA, "Balance should be backed up");
+            assertEquals(2, wallet.getQuantity("BTC"), DELTA, "Investments should be backed up");
+        }
+    }
+}
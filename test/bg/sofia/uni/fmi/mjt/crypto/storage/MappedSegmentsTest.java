@@ -0,0 +1,123 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedSegmentsTest {
+    private static final int SEGMENT_SIZE = 64;
+    private static final int SEGMENT_SHIFT = 6;
+    private static final double DELTA = 0.000001;
+
+    @TempDir
+    Path tempDir;
+
+    private FileChannel channel;
+    private MappedSegments segments;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        channel = open();
+        segments = new MappedSegments(channel, SEGMENT_SIZE, SEGMENT_SIZE / 2);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        channel.close();
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(tempDir.resolve("segments.dat"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    }
+
+    @Test
+    void testSegmentArithmeticBeyondIntegerRange() {
+        int segmentSize = MappedSegments.DEFAULT_SEGMENT_SIZE;
+        int segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        long position = 3L * Integer.MAX_VALUE + 17;
+
+        assertEquals(position / segmentSize, MappedSegments.segmentIndex(position, segmentShift),
+            "Segment index should be computed from the long position");
+        assertEquals(position % segmentSize, MappedSegments.segmentOffset(position, segmentSize),
+            "Segment offset should be computed from the long position");
+    }
+
+    @Test
+    void testSegmentArithmeticAtBoundaries() {
+        assertEquals(0, MappedSegments.segmentIndex(SEGMENT_SIZE - 1, SEGMENT_SHIFT), "Last byte of first segment");
+        assertEquals(SEGMENT_SIZE - 1, MappedSegments.segmentOffset(SEGMENT_SIZE - 1, SEGMENT_SIZE),
+            "Last byte of first segment");
+        assertEquals(1, MappedSegments.segmentIndex(SEGMENT_SIZE, SEGMENT_SHIFT), "First byte of second segment");
+        assertEquals(0, MappedSegments.segmentOffset(SEGMENT_SIZE, SEGMENT_SIZE), "First byte of second segment");
+    }
+
+    @Test
+    void testSlotOffsetBeyondIntegerRange() {
+        int users = 10_000_000;
+
+        assertEquals(64 + 256L * users, MappedCryptoUserStorage.slotOffset(users),
+            "Slot offsets should not overflow past four million users");
+    }
+
+    @Test
+    void testNonPowerOfTwoSegmentSizeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MappedSegments(channel, 100, 0),
+            "IllegalArgumentException expected when segment size is not a power of two");
+    }
+
+    @Test
+    void testGrowthMapsFixedSizeSegments() throws IOException {
+        segments.ensureCapacity(SEGMENT_SIZE * 3 + 1);
+
+        assertEquals(4, segments.segmentCount(), "Capacity should be split into fixed-size segments");
+        assertEquals(SEGMENT_SIZE * 3 + 1, segments.capacity(), "Only the last segment should be partial");
+    }
+
+    @Test
+    void testValuesStraddlingSegmentBoundaryAreReadBack() throws IOException {
+        segments.ensureCapacity(SEGMENT_SIZE * 3);
+
+        segments.putInt(SEGMENT_SIZE - 2, 0x01020304);
+        segments.putLong(SEGMENT_SIZE * 2 - 3, Long.MIN_VALUE + 42);
+        segments.putDouble(SEGMENT_SIZE - 20, 12.5);
+
+        assertEquals(0x01020304, segments.getInt(SEGMENT_SIZE - 2), "Straddling int should be read back");
+        assertEquals(Long.MIN_VALUE + 42, segments.getLong(SEGMENT_SIZE * 2 - 3),
+            "Straddling long should be read back");
+        assertEquals(12.5, segments.getDouble(SEGMENT_SIZE - 20), DELTA, "Aligned double should be read back");
+    }
+
+    @Test
+    void testBytesSpanningSeveralSegmentsArePersisted() throws IOException {
+        byte[] bytes = "x".repeat(SEGMENT_SIZE * 2 + 10).getBytes(StandardCharsets.UTF_8);
+        long position = SEGMENT_SIZE - 5;
+
+        segments.ensureCapacity(position + bytes.length);
+        segments.put(position, bytes);
+        segments.force(position, bytes.length);
+
+        byte[] slice = new byte[bytes.length];
+        segments.slice(position, bytes.length).get(slice);
+        assertArrayEquals(bytes, slice, "Straddling slice should contain every byte");
+
+        try (FileChannel reopened = open()) {
+            MappedSegments loaded = new MappedSegments(reopened, SEGMENT_SIZE, 0);
+            byte[] read = new byte[bytes.length];
+            loaded.get(position, read);
+
+            assertArrayEquals(bytes, read, "Bytes should be persisted across segments");
+        }
+    }
+}
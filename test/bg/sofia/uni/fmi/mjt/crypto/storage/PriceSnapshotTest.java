@@ -0,0 +1,58 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import bg.sofia.uni.fmi.mjt.crypto.dto.Asset;
+import bg.sofia.uni.fmi.mjt.crypto.exception.UnknownAssetException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriceSnapshotTest {
+    private static final Asset BITCOIN = new Asset("BTC", "Bitcoin", true, 19424.47);
+    private static final Asset ETHEREUM = new Asset("ETH", "Ethereum", true, 1039.36);
+
+    private final PriceSnapshot snapshot = new PriceSnapshot(7, List.of(ETHEREUM, BITCOIN));
+
+    @Test
+    void testLookups() throws UnknownAssetException {
+        assertEquals(7, snapshot.getEpoch(), "Epoch should be kept");
+        assertEquals(2, snapshot.size(), "Size should match the number of assets");
+        assertTrue(snapshot.contains("BTC"), "Snapshot should contain bitcoin");
+        assertFalse(snapshot.contains("DOGE"), "Snapshot should not contain unknown assets");
+        assertFalse(snapshot.contains(null), "Snapshot should not contain null");
+        assertEquals(BITCOIN, snapshot.getAsset("BTC"), "Asset should be found by id");
+        assertEquals(ETHEREUM.getPrice(), snapshot.getPrice("ETH"), "Price should be found by id");
+        assertEquals(0.0, snapshot.getPrice("DOGE"), "Unknown assets should be priced at zero");
+    }
+
+    @Test
+    void testGetAssetThrowsForUnknownAsset() {
+        assertThrows(UnknownAssetException.class, () -> snapshot.getAsset("DOGE"),
+            "UnknownAssetException expected");
+    }
+
+    @Test
+    void testGetPrices() {
+        Map<String, Double> expected = Map.of("BTC", BITCOIN.getPrice(), "DOGE", 0.0);
+
+        assertEquals(expected, snapshot.getPrices(List.of("BTC", "DOGE")), "Prices should be looked up per id");
+    }
+
+    @Test
+    void testSnapshotIsIsolatedFromSource() {
+        List<Asset> source = new ArrayList<>(List.of(BITCOIN));
+        PriceSnapshot isolated = new PriceSnapshot(1, source);
+
+        source.add(ETHEREUM);
+
+        assertEquals(1, isolated.size(), "Snapshot should not observe changes to its source");
+        assertThrows(UnsupportedOperationException.class, () -> isolated.getAssets().add(ETHEREUM),
+            "Assets should be unmodifiable");
+    }
+}
@@ -0,0 +1,208 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import bg.sofia.uni.fmi.mjt.crypto.exception.UserAlreadyExistsException;
+import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
+import bg.sofia.uni.fmi.mjt.crypto.user.DefaultCryptoUser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedCryptoUserStorageTest {
+    private static final double DELTA = 0.000001;
+    private static final String TEST_USERNAME = "username";
+    private static final String TEST_PASSWORD = "password";
+    private static final int SHARD_COUNT = 4;
+    private static final int LEGACY_USER_COUNT = 20_000;
+
+    @TempDir
+    Path tempDir;
+
+    private static void writeLegacyDatabase(Path file, int userCount) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < userCount; i++) {
+                writer.write(TEST_USERNAME + i + ";" + TEST_PASSWORD + ";" + i + ".0;BTC=0.5;BTC=100.0");
+                writer.newLine();
+            }
+        }
+    }
+
+    @Test
+    void testUsersArePersistedAcrossShards() throws Exception {
+        String file = tempDir.resolve("users.csv").toString();
+
+        try (ShardedCryptoUserStorage userStorage = new ShardedCryptoUserStorage(file, SHARD_COUNT)) {
+            for (int i = 0; i < 100; i++) {
+                CryptoUser user = new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD);
+                userStorage.add(user);
+
+                user.getWallet().deposit(i);
+                userStorage.update(user);
+            }
+
+            assertThrows(UserAlreadyExistsException.class,
+                () -> userStorage.add(new DefaultCryptoUser(TEST_USERNAME + 0, TEST_PASSWORD)),
+                "UserAlreadyExistsException expected when username is already taken");
+        }
+
+        try (ShardedCryptoUserStorage userStorage = new ShardedCryptoUserStorage(file, SHARD_COUNT)) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, userStorage.get(TEST_USERNAME + i).getWallet().getBalance(), DELTA,
+                    "User should be loaded from its shard");
+            }
+
+            assertNull(userStorage.get("any"), "User should not exist");
+        }
+
+        for (int shard = 0; shard < SHARD_COUNT; shard++) {
+            assertTrue(Files.size(Path.of(file + "." + shard + ".log")) > 0, "Every shard should hold some users");
+        }
+    }
+
+    @Test
+    void testLegacyDatabaseIsMigrated() throws Exception {
+        Path legacyFile = tempDir.resolve("users.csv");
+        writeLegacyDatabase(legacyFile, 10);
+        Files.write(tempDir.resolve("users.csv.log"),
+            UserLogWriter.encode(TEST_USERNAME + "0;" + TEST_PASSWORD + ";42.0;;").array());
+
+        try (ShardedCryptoUserStorage userStorage = new ShardedCryptoUserStorage(legacyFile.toString(),
+            SHARD_COUNT)) {
+            assertEquals(42.0, userStorage.get(TEST_USERNAME + 0).getWallet().getBalance(), DELTA,
+                "Legacy log should be replayed before migration");
+
+            for (int i = 1; i < 10; i++) {
+                assertNotNull(userStorage.get(TEST_USERNAME + i), "Legacy user should be migrated");
+            }
+        }
+
+        assertFalse(Files.exists(legacyFile), "Legacy database should be moved aside");
+        assertTrue(Files.exists(tempDir.resolve("users.csv.migrated")), "Legacy database should be kept");
+    }
+
+    @Test
+    void testExistingShardsAreNotOverwrittenByLegacyDatabase() throws Exception {
+        String file = tempDir.resolve("users.csv").toString();
+
+        try (ShardedCryptoUserStorage userStorage = new ShardedCryptoUserStorage(file, SHARD_COUNT)) {
+            for (int i = 0; i < 100; i++) {
+                userStorage.add(new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD));
+            }
+
+            userStorage.compact();
+        }
+
+        try (DefaultCryptoUserStorage fileStorage = new DefaultCryptoUserStorage(file)) {
+            fileStorage.add(new DefaultCryptoUser("other", TEST_PASSWORD));
+        }
+
+        try (ShardedCryptoUserStorage userStorage = new ShardedCryptoUserStorage(file, SHARD_COUNT)) {
+            for (int i = 0; i < 100; i++) {
+                assertNotNull(userStorage.get(TEST_USERNAME + i), "Sharded user should not be lost");
+            }
+        }
+
+        assertTrue(Files.exists(Path.of(file + ".log")), "Legacy database should be left untouched");
+    }
+
+    @Test
+    void testInterruptedMigrationIsRetried() throws Exception {
+        Path legacyFile = tempDir.resolve("users.csv");
+        writeLegacyDatabase(legacyFile, 100);
+        Files.writeString(tempDir.resolve("users.csv.0"), "stale;shard;0.0;;" + System.lineSeparator());
+        Files.writeString(tempDir.resolve("users.csv.1.tmp"), "partial");
+
+        try (ShardedCryptoUserStorage userStorage = new ShardedCryptoUserStorage(legacyFile.toString(),
+            SHARD_COUNT)) {
+            for (int i = 0; i < 100; i++) {
+                assertNotNull(userStorage.get(TEST_USERNAME + i), "Legacy user should be migrated after a crash");
+            }
+
+            assertNull(userStorage.get("stale"), "Partially migrated shard should be replaced");
+        }
+
+        assertTrue(Files.exists(tempDir.resolve("users.csv.shards")), "Shard count should be recorded last");
+    }
+
+    @Test
+    void testMalformedLegacyDatabaseIsNotMarkedAsMigrated() throws Exception {
+        Path legacyFile = tempDir.resolve("users.csv");
+        Files.writeString(legacyFile, TEST_USERNAME + ";" + TEST_PASSWORD + ";1.0;;" + System.lineSeparator()
+            + "malformed" + System.lineSeparator()
+            + TEST_USERNAME + "2;" + TEST_PASSWORD + ";2.0;;" + System.lineSeparator());
+
+        assertThrows(RuntimeException.class, () -> new ShardedCryptoUserStorage(legacyFile.toString(), SHARD_COUNT),
+            "RuntimeException expected when the legacy database has a malformed record");
+        assertFalse(Files.exists(tempDir.resolve("users.csv.shards")), "Failed migration should not be recorded");
+        assertTrue(Files.exists(legacyFile), "Legacy database should be kept after a failed migration");
+
+        writeLegacyDatabase(legacyFile, 10);
+
+        try (ShardedCryptoUserStorage userStorage = new ShardedCryptoUserStorage(legacyFile.toString(),
+            SHARD_COUNT)) {
+            assertNotNull(userStorage.get(TEST_USERNAME + 9), "Repaired legacy database should be migrated");
+        }
+    }
+
+    @Test
+    void testShardCountCannotChange() {
+        String file = tempDir.resolve("users.csv").toString();
+
+        assertThrows(RuntimeException.class, () -> {
+            new ShardedCryptoUserStorage(file, SHARD_COUNT).close();
+            new ShardedCryptoUserStorage(file, SHARD_COUNT * 2).close();
+        }, "Reopening with a different shard count should fail");
+    }
+
+    @Test
+    void testLoadWithDifferentShardCounts() throws Exception {
+        for (int shardCount : new int[]{1, 2, 4, 8, 16}) {
+            Path directory = Files.createDirectory(tempDir.resolve("shards-" + shardCount));
+            Path legacyFile = directory.resolve("users.csv");
+            writeLegacyDatabase(legacyFile, LEGACY_USER_COUNT);
+
+            new ShardedCryptoUserStorage(legacyFile.toString(), shardCount).close();
+
+            try (ShardedCryptoUserStorage userStorage = new ShardedCryptoUserStorage(legacyFile.toString(),
+                shardCount)) {
+                for (int i = 0; i < LEGACY_USER_COUNT; i++) {
+                    assertEquals(i, userStorage.get(TEST_USERNAME + i).getWallet().getBalance(), DELTA,
+                        "Every user should be loaded with " + shardCount + " shards");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testBackupMergesEveryShardIntoOneRestorableFile() throws Exception {
+        Path file = tempDir.resolve("users.csv");
+        Path backupFile = tempDir.resolve("backup.csv");
+
+        try (ShardedCryptoUserStorage userStorage = new ShardedCryptoUserStorage(file.toString(), SHARD_COUNT)) {
+            for (int i = 0; i < SHARD_COUNT * 4; i++) {
+                CryptoUser user = new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD);
+                user.getWallet().deposit(i);
+                userStorage.add(user);
+            }
+
+            userStorage.backup(backupFile.toString()).join();
+        }
+
+        try (DefaultCryptoUserStorage restored = new DefaultCryptoUserStorage(backupFile.toString())) {
+            for (int i = 0; i < SHARD_COUNT * 4; i++) {
+                assertEquals(i, restored.get(TEST_USERNAME + i).getWallet().getBalance(), DELTA,
+                    "Every shard should be included in the backup");
+            }
+        }
+    }
+}
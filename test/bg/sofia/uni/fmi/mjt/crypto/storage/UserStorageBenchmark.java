@@ -0,0 +1,75 @@
+package bg.sofia.uni.fmi.mjt.crypto.storage;
+
+import bg.sofia.uni.fmi.mjt.crypto.user.CryptoUser;
+import bg.sofia.uni.fmi.mjt.crypto.user.DefaultCryptoUser;
+
+import java.io.Closeable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class UserStorageBenchmark {
+    private static final String TEST_USERNAME = "username";
+    private static final String TEST_PASSWORD = "password";
+    private static final int USERS = 100;
+    private static final int UPDATES = 2000;
+    private static final int POSITION_COUNT = 50;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        for (UserStorageType type : UserStorageType.values()) {
+            long best = Long.MAX_VALUE;
+
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                long nanos = measure(type);
+
+                if (round >= WARMUP_ROUNDS) {
+                    best = Math.min(best, nanos);
+                }
+            }
+
+            System.out.printf("%-8s %,10d updates/s%n", type.getName(), UPDATES * 1_000_000_000L / best);
+        }
+    }
+
+    private static long measure(UserStorageType type) throws Exception {
+        Path directory = Files.createTempDirectory("user-storage-benchmark");
+        String path = type == UserStorageType.JDBC
+            ? "jdbc:h2:" + directory.resolve("users")
+            : directory.resolve("users").toString();
+
+        CryptoUserStorage storage = type.create(path);
+
+        try {
+            return measureUpdates(storage);
+        } finally {
+            ((Closeable) storage).close();
+        }
+    }
+
+    private static long measureUpdates(CryptoUserStorage storage) throws Exception {
+        CryptoUser[] users = new CryptoUser[USERS];
+
+        for (int i = 0; i < USERS; i++) {
+            users[i] = new DefaultCryptoUser(TEST_USERNAME + i, TEST_PASSWORD);
+            users[i].getWallet().deposit(UPDATES);
+
+            for (int j = 0; j < POSITION_COUNT; j++) {
+                users[i].getWallet().buy("ASSET" + j, 1, 1);
+            }
+
+            storage.add(users[i]);
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < UPDATES; i++) {
+            CryptoUser user = users[i % USERS];
+
+            user.getWallet().buy("ASSET" + i % POSITION_COUNT, 1, 1);
+            storage.update(user);
+        }
+
+        return System.nanoTime() - start;
+    }
+}
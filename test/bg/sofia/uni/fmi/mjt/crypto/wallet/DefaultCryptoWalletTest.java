@@ -8,10 +8,13 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -153,4 +156,40 @@ class DefaultCryptoWalletTest {
 
         assertEquals(TRENDS, wallet.getTrends(newPrices), "Trends should match");
     }
+
+    @Test
+    void testToStringIsCachedUntilWalletChanges() throws NegativeValueException, InsufficientResourcesException {
+        wallet.deposit(1000.0);
+        String serialized = wallet.toString();
+
+        assertSame(serialized, wallet.toString(), "Unchanged wallet should reuse its serialized form");
+
+        wallet.buy("BTC", 500.0, assetPrices.get("BTC"));
+
+        assertNotSame(serialized, wallet.toString(), "Changed wallet should be serialized again");
+        assertEquals("500.0;BTC=0.01;BTC=50000.0", wallet.toString(), "Serialized form should be up to date");
+    }
+
+    @Test
+    void testOfWithoutInvestmentsCanBuy() throws NegativeValueException, InsufficientResourcesException {
+        CryptoWallet wallet = DefaultCryptoWallet.of("1000.0;;");
+
+        wallet.buy("BTC", 500.0, assetPrices.get("BTC"));
+
+        assertEquals(List.of("BTC"), wallet.getInvestments(), "Loaded wallet should accept new investments");
+    }
+
+    @Test
+    void testSnapshotIsDetachedFromTheWallet() throws NegativeValueException, InsufficientResourcesException {
+        wallet.deposit(1000.0);
+        wallet.buy("BTC", 500.0, 50000.0);
+
+        CryptoWallet snapshot = wallet.snapshot();
+
+        wallet.buy("ETH", 300.0, 3000.0);
+
+        assertEquals(500.0, snapshot.getBalance(), DELTA, "Snapshot balance should not change");
+        assertEquals(List.of("BTC"), snapshot.getInvestments(), "Snapshot investments should not change");
+        assertEquals(0.01, snapshot.getQuantity("BTC"), DELTA, "Snapshot quantity should be copied");
+    }
 }
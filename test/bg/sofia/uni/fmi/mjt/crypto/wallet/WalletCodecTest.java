@@ -0,0 +1,129 @@
+package bg.sofia.uni.fmi.mjt.crypto.wallet;
+
+import bg.sofia.uni.fmi.mjt.crypto.exception.InsufficientResourcesException;
+import bg.sofia.uni.fmi.mjt.crypto.exception.NegativeValueException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WalletCodecTest {
+    private static final double DELTA = 0.000001;
+
+    private CryptoWallet wallet;
+
+    @BeforeEach
+    void setUp() throws NegativeValueException, InsufficientResourcesException {
+        wallet = new DefaultCryptoWallet();
+
+        wallet.deposit(1000);
+        wallet.buy("BTC", 500, 19424.470311714055);
+        wallet.buy("ETH", 300, 1039.3682961935641);
+    }
+
+    @Test
+    void testRoundTrip() {
+        CryptoWallet decoded = WalletCodec.decode(WalletCodec.encode(wallet));
+
+        assertEquals(wallet.getBalance(), decoded.getBalance(), DELTA, "Balance should round-trip");
+        assertEquals(wallet.getQuantity("BTC"), decoded.getQuantity("BTC"), "Quantity should round-trip exactly");
+        assertEquals(wallet.getEntryPrice("ETH"), decoded.getEntryPrice("ETH"), "Entry price should round-trip exactly");
+        assertEquals(wallet.toString(), decoded.toString(), "Decoded wallet should match the original");
+    }
+
+    @Test
+    void testEmptyWalletRoundTrip() {
+        CryptoWallet decoded = WalletCodec.decode(WalletCodec.encode(new DefaultCryptoWallet()));
+
+        assertTrue(decoded.getInvestments().isEmpty(), "Empty wallet should have no investments");
+        assertEquals(0.0, decoded.getBalance(), DELTA, "Empty wallet should have no balance");
+    }
+
+    @Test
+    void testAssetIdsAreInterned() {
+        byte[] encoded = WalletCodec.encode(wallet);
+
+        String first = WalletCodec.decode(encoded).getInvestments().stream().filter("BTC"::equals).findFirst().get();
+        String second = WalletCodec.decode(encoded).getInvestments().stream().filter("BTC"::equals).findFirst().get();
+
+        assertSame(first, second, "Decoded asset ids should be shared");
+    }
+
+    @Test
+    void testInternedAssetIdsAreBounded() {
+        Map<String, Double> investments = new HashMap<>();
+        Map<String, Double> entryPrices = new HashMap<>();
+
+        for (int i = 0; i < WalletCodec.MAX_INTERNED_ASSET_IDS * 3; i++) {
+            investments.put("CLIENT" + i, 1.0);
+            entryPrices.put("CLIENT" + i, 1.0);
+        }
+
+        CryptoWallet decoded = WalletCodec.decode(WalletCodec.encode(
+            new DefaultCryptoWallet(0, investments, entryPrices)));
+
+        assertEquals(investments.size(), decoded.getInvestments().size(), "Every asset id should be decoded");
+        assertTrue(WalletCodec.getInternedCount() <= WalletCodec.MAX_INTERNED_ASSET_IDS,
+            "Interned asset ids should stay bounded: " + WalletCodec.getInternedCount());
+    }
+
+    @Test
+    void testEncodingUsesAConsistentSnapshot() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread trader = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    wallet.buy("DOGE", 1, 1);
+                    wallet.sell("DOGE", 1);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        trader.start();
+
+        try {
+            for (int i = 0; i < 10_000; i++) {
+                CryptoWallet decoded = WalletCodec.decode(WalletCodec.encode(wallet));
+                double cost = decoded.getInvestments().contains("DOGE") ? 1 : 0;
+
+                assertEquals(200 - cost, decoded.getBalance(), DELTA, "Balance and investments should match");
+            }
+        } finally {
+            running.set(false);
+            trader.join();
+        }
+    }
+
+    @Test
+    void testUnsupportedVersion() {
+        byte[] encoded = WalletCodec.encode(wallet);
+        encoded[0] = WalletCodec.VERSION + 1;
+
+        assertThrows(IllegalArgumentException.class, () -> WalletCodec.decode(encoded),
+            "IllegalArgumentException expected for an unknown version");
+    }
+
+    @Test
+    void testLegacyTextIsDecoded() {
+        CryptoWallet decoded = WalletCodec.decodeLegacy(wallet.toString());
+
+        assertEquals(wallet.toString(), decoded.toString(), "Legacy text should decode to the same wallet");
+    }
+
+    @Test
+    void testBinaryEncodingIsSmallerThanText() {
+        int binaryBytes = WalletCodec.encode(wallet).length;
+        int textBytes = wallet.toString().getBytes(StandardCharsets.UTF_8).length;
+
+        assertTrue(binaryBytes < textBytes, "Binary wallet should be smaller: " + binaryBytes + " vs " + textBytes);
+    }
+}